@@ -0,0 +1,282 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.voice.TTSException;
+import org.openhab.voice.coquitts.internal.AnnouncementTemplate.Part;
+import org.openhab.voice.coquitts.internal.dto.CoquiTTSVoice;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Composes templated announcements from cached fragments.
+ * <p>
+ * The fixed fragments of a template and the slot values are synthesized and cached separately, and spliced into one
+ * WAV clip. A new slot value therefore only costs the synthesis of the value itself, or nothing at all if it is part
+ * of the pre-rendered slot library.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+class AnnouncementComposer {
+
+    private static final String RANGE_SEPARATOR = "..";
+
+    /**
+     * Maximum number of values of a numeric range in the slot library, each of them is synthesized
+     */
+    static final int MAX_RANGE_VALUES = 100;
+
+    private final Logger logger = LoggerFactory.getLogger(AnnouncementComposer.class);
+
+    private final CoquiAPI api;
+    private final ExecutorService backgroundExecutor;
+
+    private volatile List<AnnouncementTemplate> templates = List.of();
+    private volatile Map<String, List<String>> slotLibrary = Map.of();
+
+    /**
+     * UIDs of the voices the slot library has been pre-rendered for
+     */
+    private final Set<String> prerenderedVoices = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Set when the service is disposed, pre-rendering stops at the next fragment
+     */
+    private volatile boolean stopped;
+
+    /**
+     * Constructor.
+     *
+     * @param api API used to synthesize and cache the fragments
+     * @param backgroundExecutor Executor for pre-rendering the slot library
+     */
+    AnnouncementComposer(CoquiAPI api, ExecutorService backgroundExecutor) {
+        this.api = api;
+        this.backgroundExecutor = backgroundExecutor;
+    }
+
+    /**
+     * Stops pre-rendering, no further fragments are rendered in the background.
+     */
+    void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Sets the templates and the slot library.
+     *
+     * @param templateTexts Templates like "The temperature in {room} is {value} degrees"
+     * @param slotLibraryEntries Slot values to pre-render, like "room=Kitchen|Living Room" or "value=-10..40"
+     */
+    void configure(Collection<String> templateTexts, Collection<String> slotLibraryEntries) {
+        List<AnnouncementTemplate> parsedTemplates = new ArrayList<>();
+        for (String text : templateTexts) {
+            if (text.isBlank()) {
+                continue;
+            }
+            try {
+                parsedTemplates.add(new AnnouncementTemplate(text));
+            } catch (IllegalArgumentException e) {
+                logger.warn("Ignoring announcement template: {}", e.getMessage());
+            }
+        }
+        Map<String, List<String>> parsedLibrary = new LinkedHashMap<>();
+        for (String entry : slotLibraryEntries) {
+            int separator = entry.indexOf('=');
+            if (separator <= 0) {
+                if (!entry.isBlank()) {
+                    logger.warn("Ignoring slot library entry '{}', expected <slot>=<value>|<value>...", entry);
+                }
+                continue;
+            }
+            parsedLibrary.computeIfAbsent(entry.substring(0, separator).trim(), k -> new ArrayList<>())
+                    .addAll(parseValues(entry.substring(separator + 1)));
+        }
+        templates = List.copyOf(parsedTemplates);
+        slotLibrary = parsedLibrary;
+        prerenderedVoices.clear();
+        logger.debug("Configured {} announcement templates and {} slot library entries", parsedTemplates.size(),
+                parsedLibrary.size());
+    }
+
+    /**
+     * Composes the text from cached fragments if it matches a template.
+     *
+     * @param text Text to synthesize
+     * @param voice Voice
+     * @param codec Requested codec
+     * @param context Lane and deadline of the fragments that are not cached yet
+     * @return Composed WAV clip or {@code null} if no template matches or composition failed
+     */
+    byte @Nullable [] compose(String text, CoquiTTSVoice voice, String codec, SynthesisContext context) {
+        for (AnnouncementTemplate template : templates) {
+            Map<String, String> values = template.match(text);
+            if (values != null) {
+                prerenderLibrary(voice, codec);
+                try {
+                    return compose(template, values, voice, codec, context);
+                } catch (TTSException e) {
+                    logger.debug("Could not compose '{}' from template '{}': {}", text, template, e.getMessage());
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Composes an announcement from a template and slot values.
+     *
+     * @param template Template
+     * @param values Slot values by slot name
+     * @param voice Voice
+     * @param codec Requested codec
+     * @param context Lane and deadline of the fragments that are not cached yet
+     * @return Composed WAV clip
+     * @throws TTSException if a fragment could not be synthesized or the fragments could not be spliced
+     */
+    byte[] compose(AnnouncementTemplate template, Map<String, String> values, CoquiTTSVoice voice, String codec,
+            SynthesisContext context) throws TTSException {
+        List<byte[]> fragments = new ArrayList<>();
+        for (String fragment : fragments(template, values)) {
+            byte[] audio = api.synthesizeFragment(fragment, voice, codec, context);
+            if (audio == null) {
+                throw new TTSException("Could not synthesize fragment '" + fragment + "'");
+            }
+            fragments.add(audio);
+        }
+        try {
+            return WaveUtils.concatenate(fragments);
+        } catch (IOException e) {
+            throw new TTSException("Could not splice fragments", e);
+        }
+    }
+
+    /**
+     * Splits an announcement into the fragments to synthesize. Fixed parts without any letter or digit, like the
+     * comma in "{room}, {value}", cannot be spoken on their own and are attached to the fragment before them, or to
+     * the first fragment if they start the template.
+     *
+     * @param template Template
+     * @param values Slot values by slot name
+     * @return Fragment texts in order
+     * @throws TTSException if a slot has no value
+     */
+    static List<String> fragments(AnnouncementTemplate template, Map<String, String> values) throws TTSException {
+        List<String> fragments = new ArrayList<>();
+        String detached = "";
+        for (Part part : template.getParts()) {
+            String fragment = part.slot ? values.get(part.text) : part.text;
+            if (fragment == null) {
+                throw new TTSException("No value for slot '" + part.text + "'");
+            }
+            fragment = fragment.trim();
+            if (fragment.isEmpty()) {
+                continue;
+            }
+            if (!part.slot && !isSpeakable(fragment)) {
+                if (fragments.isEmpty()) {
+                    detached = detached + fragment;
+                } else {
+                    int last = fragments.size() - 1;
+                    fragments.set(last, fragments.get(last) + fragment);
+                }
+                continue;
+            }
+            fragments.add(detached + fragment);
+            detached = "";
+        }
+        return fragments;
+    }
+
+    private static boolean isSpeakable(String fragment) {
+        return fragment.codePoints().anyMatch(Character::isLetterOrDigit);
+    }
+
+    /**
+     * Renders the fixed fragments of all templates and the slot library for a voice in the background, once.
+     */
+    private void prerenderLibrary(CoquiTTSVoice voice, String codec) {
+        if (stopped || !prerenderedVoices.add(voice.getUID())) {
+            return;
+        }
+        List<String> fragments = new ArrayList<>();
+        for (AnnouncementTemplate template : templates) {
+            template.getParts().stream().filter(p -> !p.slot && isSpeakable(p.text))
+                    .forEach(p -> fragments.add(p.text.trim()));
+        }
+        slotLibrary.values().forEach(fragments::addAll);
+        try {
+            backgroundExecutor.execute(() -> {
+                logger.debug("Pre-rendering {} fragments for voice {}", fragments.size(), voice.getUID());
+                for (String fragment : fragments) {
+                    if (stopped) {
+                        logger.debug("Pre-rendering for voice {} stopped", voice.getUID());
+                        return;
+                    }
+                    try {
+                        api.synthesizeFragment(fragment, voice, codec,
+                                api.newContext(SynthesisScheduler.Lane.BACKGROUND));
+                    } catch (TTSException e) {
+                        logger.debug("Could not pre-render '{}': {}", fragment, e.getMessage());
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            prerenderedVoices.remove(voice.getUID());
+        }
+    }
+
+    private List<String> parseValues(String values) {
+        List<String> result = new ArrayList<>();
+        for (String value : values.split("\\|")) {
+            String trimmed = value.trim();
+            int range = trimmed.indexOf(RANGE_SEPARATOR, 1);
+            if (range > 0) {
+                try {
+                    int from = Integer.parseInt(trimmed.substring(0, range).trim());
+                    int to = Integer.parseInt(trimmed.substring(range + RANGE_SEPARATOR.length()).trim());
+                    if ((long) to - from + 1 > MAX_RANGE_VALUES) {
+                        logger.warn("Ignoring slot range '{}', it has more than {} values", trimmed,
+                                MAX_RANGE_VALUES);
+                        continue;
+                    }
+                    for (int i = from; i <= to; i++) {
+                        result.add(Integer.toString(i));
+                    }
+                    continue;
+                } catch (NumberFormatException e) {
+                    // not a numeric range, use as it is
+                }
+            }
+            if (!trimmed.isEmpty()) {
+                result.add(trimmed);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Announcement template like "The temperature in {room} is {value} degrees".
+ * <p>
+ * A template consists of fixed fragments and named slots. Two slots must be separated by a fixed fragment, otherwise
+ * a text could not be matched unambiguously.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+class AnnouncementTemplate {
+
+    private static final Pattern SLOT = Pattern.compile("\\{(\\w+)\\}");
+    private static final String TRAILING_PUNCTUATION = "[.!?]?";
+
+    /**
+     * Fixed fragment or slot of a template.
+     */
+    static class Part {
+        final String text;
+        final boolean slot;
+
+        Part(String text, boolean slot) {
+            this.text = text;
+            this.slot = slot;
+        }
+
+        @Override
+        public String toString() {
+            return slot ? "{" + text + "}" : text;
+        }
+    }
+
+    private final String template;
+    private final List<Part> parts;
+    private final Pattern pattern;
+
+    /**
+     * Parses a template.
+     *
+     * @param template Template text with slots in curly braces
+     * @throws IllegalArgumentException if the template has no slot or two adjacent slots
+     */
+    AnnouncementTemplate(String template) {
+        this.template = template.trim();
+        List<Part> parsed = new ArrayList<>();
+        StringBuilder regex = new StringBuilder("(?i)");
+        Matcher matcher = SLOT.matcher(this.template);
+        int position = 0;
+        boolean previousWasSlot = false;
+        while (matcher.find()) {
+            if (matcher.start() > position) {
+                String fixed = this.template.substring(position, matcher.start());
+                parsed.add(new Part(fixed, false));
+                regex.append(fixedRegex(fixed));
+            } else if (previousWasSlot) {
+                throw new IllegalArgumentException("Template '" + template + "' has adjacent slots");
+            }
+            parsed.add(new Part(matcher.group(1), true));
+            regex.append("(.+?)");
+            position = matcher.end();
+            previousWasSlot = true;
+        }
+        if (parsed.isEmpty()) {
+            throw new IllegalArgumentException("Template '" + template + "' has no slot");
+        }
+        if (position < this.template.length()) {
+            String fixed = this.template.substring(position);
+            parsed.add(new Part(fixed, false));
+            regex.append(fixedRegex(fixed));
+        }
+        regex.append(TRAILING_PUNCTUATION);
+        this.parts = Collections.unmodifiableList(parsed);
+        this.pattern = Pattern.compile(regex.toString());
+    }
+
+    /**
+     * Matches a text against the template.
+     *
+     * @param text Text to match
+     * @return Slot values by slot name or {@code null} if the text does not match
+     */
+    @Nullable
+    Map<String, String> match(String text) {
+        Matcher matcher = pattern.matcher(text.trim().replaceAll("\\s+", " "));
+        if (!matcher.matches()) {
+            return null;
+        }
+        Map<String, String> values = new LinkedHashMap<>();
+        int group = 1;
+        for (Part part : parts) {
+            if (part.slot) {
+                values.put(part.text, matcher.group(group++).trim());
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @return Fixed fragments and slots in order
+     */
+    List<Part> getParts() {
+        return parts;
+    }
+
+    @Override
+    public String toString() {
+        return template;
+    }
+
+    private static String fixedRegex(String fixed) {
+        // whitespace in the template matches any whitespace in the text
+        List<String> words = new ArrayList<>();
+        for (String word : fixed.trim().split("\\s+")) {
+            if (!word.isEmpty()) {
+                words.add(Pattern.quote(word));
+            }
+        }
+        return "\\s*" + String.join("\\s+", words) + "\\s*";
+    }
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.audio.AudioFormat;
+import org.openhab.core.common.NamedThreadFactory;
+import org.openhab.core.voice.TTSException;
+import org.openhab.core.voice.Voice;
+import org.openhab.voice.coquitts.internal.dto.CoquiTTSVoice;
+
+/**
+ * Renders a batch of texts into the cache.
+ * <p>
+ * The batch file contains one {@code <voice> | <text>} pair per line, the voice given by its UID, technical name or
+ * label. Empty lines and lines starting with {@code #} are ignored. Texts already cached are skipped. All backend
+ * requests use the background lane, so the batch never delays announcements and the background concurrency limit
+ * applies in addition to the parallelism of the batch.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+class BulkSynthesis {
+
+    private static final char SEPARATOR = '|';
+    private static final int MAX_REPORTED_FAILURES = 10;
+
+    /**
+     * One line of the batch file.
+     */
+    static class Item {
+        final int line;
+        final CoquiTTSVoice voice;
+        final String text;
+
+        Item(int line, CoquiTTSVoice voice, String text) {
+            this.line = line;
+            this.voice = voice;
+            this.text = text;
+        }
+    }
+
+    private final CoquiAPI api;
+    private final Collection<Voice> voices;
+    private final int parallelism;
+
+    private final AtomicInteger synthesized = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final AtomicLong bytes = new AtomicLong();
+    private final List<String> failures = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Constructor.
+     *
+     * @param api API used to synthesize and cache the texts
+     * @param voices Available voices
+     * @param parallelism Number of texts processed at the same time
+     */
+    BulkSynthesis(CoquiAPI api, Collection<Voice> voices, int parallelism) {
+        this.api = api;
+        this.voices = voices;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Parses a batch file.
+     *
+     * @param file Batch file
+     * @param errors Receives a message for every line that could not be parsed
+     * @return Items of the batch
+     * @throws IOException if the file could not be read
+     */
+    List<Item> parse(File file, List<String> errors) throws IOException {
+        List<Item> items = new ArrayList<>();
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int separator = line.indexOf(SEPARATOR);
+            if (separator <= 0 || separator == line.length() - 1) {
+                errors.add("Line " + (i + 1) + ": expected <voice> | <text>");
+                continue;
+            }
+            String voiceName = line.substring(0, separator).trim();
+            CoquiTTSVoice voice = findVoice(voiceName);
+            if (voice == null) {
+                errors.add("Line " + (i + 1) + ": unknown voice '" + voiceName + "'");
+                continue;
+            }
+            items.add(new Item(i + 1, voice, line.substring(separator + 1).trim()));
+        }
+        return items;
+    }
+
+    /**
+     * Renders all items and waits until they are done.
+     *
+     * @param items Items of the batch
+     * @return Report lines
+     * @throws InterruptedException if interrupted while waiting, remaining items are cancelled
+     */
+    List<String> run(List<Item> items) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+                new NamedThreadFactory(CoquiTTSService.SERVICE_ID + "-bulk", true));
+        long start = System.nanoTime();
+        try {
+            for (Item item : items) {
+                executor.execute(() -> render(item));
+            }
+            executor.shutdown();
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                // keep waiting, large batches may take hours
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        double seconds = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)) / 1000.0;
+        List<String> report = new ArrayList<>();
+        report.add(String.format("%d items in %.1f s: %d synthesized, %d already cached, %d failed", items.size(),
+                seconds, synthesized.get(), skipped.get(), failures.size()));
+        report.add(String.format("Throughput %.2f syntheses/s, %d bytes in total (%.0f bytes/s)",
+                synthesized.get() / seconds, bytes.get(), bytes.get() / seconds));
+        synchronized (failures) {
+            failures.stream().limit(MAX_REPORTED_FAILURES).forEach(report::add);
+            if (failures.size() > MAX_REPORTED_FAILURES) {
+                report.add("... and " + (failures.size() - MAX_REPORTED_FAILURES) + " more failures");
+            }
+        }
+        return report;
+    }
+
+    private void render(Item item) {
+        if (api.isCached(item.text, item.voice, AudioFormat.CODEC_PCM_SIGNED)) {
+            skipped.incrementAndGet();
+            return;
+        }
+        try {
+            byte[] audio = api.synthesizeSpeech(item.text, item.voice, AudioFormat.CODEC_PCM_SIGNED,
+                    api.newContext(SynthesisScheduler.Lane.BACKGROUND));
+            if (audio == null) {
+                failures.add("Line " + item.line + ": synthesis failed");
+                return;
+            }
+            synthesized.incrementAndGet();
+            bytes.addAndGet(audio.length);
+        } catch (TTSException e) {
+            failures.add("Line " + item.line + ": " + e.getMessage());
+        }
+    }
+
+    private @Nullable CoquiTTSVoice findVoice(String name) {
+        for (Voice voice : voices) {
+            if (voice instanceof CoquiTTSVoice) {
+                CoquiTTSVoice coquiVoice = (CoquiTTSVoice) voice;
+                if (name.equals(voice.getUID()) || name.equals(coquiVoice.getTechnicalName())
+                        || name.equalsIgnoreCase(voice.getLabel())) {
+                    return coquiVoice;
+                }
+            }
+        }
+        return null;
+    }
+}
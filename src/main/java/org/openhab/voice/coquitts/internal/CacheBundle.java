@@ -0,0 +1,269 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+/**
+ * Read-only bundle of cache entries in one file, used to provision caches of several installations.
+ * <p>
+ * Layout: the magic bytes {@code COQUITTS}, the format version and the length of the index (4 bytes each, big
+ * endian), the JSON index and finally the audio of all entries as contiguous blobs. Opened bundles keep their file
+ * open and read the audio of an entry when it is requested, so the whole file is never loaded. The index is validated
+ * against the size of the file when the bundle is opened, so a truncated bundle is rejected instead of serving partial
+ * audio.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+class CacheBundle implements Closeable {
+
+    private static final byte[] MAGIC = "COQUITTS".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = MAGIC.length + 8;
+
+    /**
+     * Index record of a bundled entry.
+     */
+    static class Slot {
+        CacheIndex.Entry entry = new CacheIndex.Entry();
+        long offset;
+        int length;
+    }
+
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+
+    private final File file;
+    private final FileChannel channel;
+    private final long blobStart;
+    private final Map<String, Slot> slots = new LinkedHashMap<>();
+
+    private CacheBundle(File file, FileChannel channel, long blobStart, List<Slot> slots) {
+        this.file = file;
+        this.channel = channel;
+        this.blobStart = blobStart;
+        slots.forEach(s -> this.slots.put(s.entry.key, s));
+    }
+
+    /**
+     * Opens a bundle and validates its header and index.
+     *
+     * @param file Bundle file
+     * @return Opened bundle, to be closed when it is no longer used
+     * @throws IOException if the file could not be read, is not a bundle or is truncated
+     */
+    static CacheBundle open(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            header.flip();
+            byte[] magic = new byte[MAGIC.length];
+            if (header.remaining() < HEADER_SIZE) {
+                throw new IOException(file + " is not a cache bundle");
+            }
+            header.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException(file + " is not a cache bundle");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported cache bundle version " + version);
+            }
+            int indexLength = header.getInt();
+            if (indexLength < 0 || indexLength > size - HEADER_SIZE) {
+                throw new IOException("Cache bundle " + file + " is truncated");
+            }
+            ByteBuffer index = ByteBuffer.allocate(indexLength);
+            readFully(channel, index, HEADER_SIZE);
+            if (index.hasRemaining()) {
+                throw new IOException("Cache bundle " + file + " is truncated");
+            }
+            Slot[] slots;
+            try {
+                slots = GSON.fromJson(new String(index.array(), StandardCharsets.UTF_8), Slot[].class);
+            } catch (JsonParseException e) {
+                throw new IOException("Corrupt cache bundle index: " + e.getMessage());
+            }
+            long blobStart = HEADER_SIZE + (long) indexLength;
+            List<Slot> validated = new ArrayList<>();
+            for (Slot slot : slots == null ? new Slot[0] : slots) {
+                if (slot == null || slot.entry == null || !isFileName(slot.entry.key)
+                        || !isFileName(slot.entry.format)) {
+                    throw new IOException("Corrupt cache bundle index in " + file);
+                }
+                if (slot.offset < 0 || slot.length < 0 || slot.offset > size - blobStart - slot.length) {
+                    throw new IOException("Cache bundle " + file + " is truncated");
+                }
+                validated.add(slot);
+            }
+            return new CacheBundle(file, channel, blobStart, validated);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes cache entries into a new bundle. The bundle is written to a temporary file and renamed when complete.
+     *
+     * @param target Bundle file
+     * @param folder Cache folder holding the audio of the entries
+     * @param entries Entries to export, entries without audio file are skipped
+     * @return Number of exported entries
+     * @throws IOException if the bundle could not be written
+     */
+    static int export(File target, File folder, Collection<CacheIndex.Entry> entries) throws IOException {
+        List<Slot> slots = new ArrayList<>();
+        List<File> files = new ArrayList<>();
+        long offset = 0;
+        for (CacheIndex.Entry entry : entries) {
+            File audio = new File(folder, entry.key + "." + entry.format);
+            if (!audio.isFile()) {
+                continue;
+            }
+            Slot slot = new Slot();
+            slot.entry = entry;
+            slot.offset = offset;
+            slot.length = (int) audio.length();
+            offset += slot.length;
+            slots.add(slot);
+            files.add(audio);
+        }
+        byte[] index = GSON.toJson(slots).getBytes(StandardCharsets.UTF_8);
+        Path temp = new File(target.getAbsoluteFile().getParentFile(), target.getName() + CacheWriter.TEMP_SUFFIX)
+                .toPath();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(index.length);
+            out.write(index);
+            for (int i = 0; i < files.size(); i++) {
+                copy(files.get(i), slots.get(i).length, out);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return slots.size();
+    }
+
+    /**
+     * @param key Cache key
+     * @return Audio of the entry or {@code null} if the bundle does not contain the key
+     * @throws IOException if the audio could not be read completely, e.g. because the bundle was closed or the file
+     *             was truncated after it had been opened
+     */
+    byte @Nullable [] read(String key) throws IOException {
+        Slot slot = slots.get(key);
+        if (slot == null) {
+            return null;
+        }
+        ByteBuffer audio = ByteBuffer.allocate(slot.length);
+        // positional reads, so concurrent reads do not share the position of the channel
+        readFully(channel, audio, blobStart + slot.offset);
+        if (audio.hasRemaining()) {
+            throw new IOException("Cache bundle " + file + " is truncated");
+        }
+        return audio.array();
+    }
+
+    /**
+     * @param key Cache key
+     * @return {@code true} if the bundle contains the key
+     */
+    boolean contains(String key) {
+        return slots.containsKey(key);
+    }
+
+    /**
+     * @return Metadata of all bundled entries
+     */
+    List<CacheIndex.Entry> getEntries() {
+        List<CacheIndex.Entry> entries = new ArrayList<>();
+        slots.values().forEach(s -> entries.add(s.entry));
+        return entries;
+    }
+
+    /**
+     * @return Bundle file
+     */
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Closes the file of the bundle, later reads fail.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * @return {@code true} if the name can be used as part of a file name in the cache folder
+     */
+    private static boolean isFileName(@Nullable String name) {
+        return name != null && !name.isEmpty() && name.indexOf('/') < 0 && name.indexOf('\\') < 0
+                && !"..".equals(name);
+    }
+
+    /**
+     * Reads from a position until the buffer is full or the end of the file is reached.
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long next = position;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, next);
+            if (read < 0) {
+                return;
+            }
+            next += read;
+        }
+    }
+
+    private static void copy(File file, int length, OutputStream out) throws IOException {
+        byte[] content = Files.readAllBytes(file.toPath());
+        if (content.length != length) {
+            throw new IOException("Cache file " + file.getName() + " changed during export");
+        }
+        out.write(content);
+    }
+}
@@ -0,0 +1,402 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+/**
+ * Metadata of all cache entries, kept in one append-only log file.
+ * <p>
+ * Every new entry, every removal and every access is appended as one JSON line to {@value #LOG_FILE_NAME}. The log is
+ * replayed at startup and compacted into a snapshot of the live entries once it has grown to twice their number. This
+ * replaces the former per-entry {@code .txt} files, which are migrated into the log on first load.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+class CacheIndex {
+
+    static final String LOG_FILE_NAME = "cache-index.log";
+
+    /**
+     * Name of the audio file or legacy text file of a cache entry: voice, MD5 hash of the key and extension
+     */
+    static final Pattern ENTRY_FILE = Pattern.compile(".+_[0-9a-f]{32}\\.(wav|txt)");
+
+    private static final String SIDECAR_EXTENSION = ".txt";
+    private static final int MIN_COMPACTION_RECORDS = 100;
+
+    /**
+     * Metadata of one cache entry, also the format of a log record.
+     */
+    static class Entry {
+        String key = "";
+        @Nullable
+        String text;
+        @Nullable
+        String voice;
+        @Nullable
+        String config;
+        @Nullable
+        String format;
+        long size;
+        long created;
+        long lastAccess;
+        /**
+         * Number of times the entry was served
+         */
+        long plays;
+        /**
+         * Only set in log records removing the entry
+         */
+        boolean removed;
+        /**
+         * Only set in log records updating the last access time and play count of the entry
+         */
+        boolean touched;
+
+        Entry() {
+        }
+
+        Entry(String key, String text, String voice, String config, String format, long size) {
+            this.key = key;
+            this.text = text;
+            this.voice = voice;
+            this.config = config;
+            this.format = format;
+            this.size = size;
+            this.created = System.currentTimeMillis();
+            this.lastAccess = created;
+            this.plays = 1;
+        }
+
+        String getKey() {
+            return key;
+        }
+
+        @Nullable
+        String getText() {
+            return text;
+        }
+
+        @Nullable
+        String getVoice() {
+            return voice;
+        }
+
+        @Nullable
+        String getConfig() {
+            return config;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        long getLastAccess() {
+            return lastAccess;
+        }
+
+        long getPlays() {
+            return plays;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s  %8d bytes  %5d plays  created %s  last used %s  voice=%s  text=\"%s\"", key,
+                    size, plays, Instant.ofEpochMilli(created), Instant.ofEpochMilli(lastAccess), voice, text);
+        }
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(CacheIndex.class);
+    private final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+
+    private final File folder;
+    private final File logFile;
+    private final CacheWriter writer;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    /**
+     * Number of records in the log file
+     */
+    private int records;
+
+    /**
+     * Constructor. Loads the log and migrates sidecar files.
+     *
+     * @param folder Cache folder
+     * @param writer Writer used to publish compacted logs
+     */
+    CacheIndex(File folder, CacheWriter writer) {
+        this.folder = folder;
+        this.logFile = new File(folder, LOG_FILE_NAME);
+        this.writer = writer;
+        load();
+        migrateSidecars();
+    }
+
+    /**
+     * Records a new cache entry.
+     *
+     * @param entry Entry metadata
+     */
+    synchronized void put(Entry entry) {
+        entries.put(entry.key, entry);
+        append(entry);
+    }
+
+    /**
+     * Records the removal of a cache entry.
+     *
+     * @param key Key of the entry
+     */
+    synchronized void remove(String key) {
+        if (entries.remove(key) != null) {
+            Entry record = new Entry();
+            record.key = key;
+            record.removed = true;
+            append(record);
+        }
+    }
+
+    /**
+     * Updates the last access time and play count of an entry.
+     *
+     * @param key Key of the entry
+     */
+    synchronized void touch(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            entry.lastAccess = System.currentTimeMillis();
+            entry.plays++;
+            appendTouch(entry);
+        }
+    }
+
+    /**
+     * Carries the play count of an entry over to its replacement, e.g. after it was rendered again under a new key.
+     *
+     * @param key Key of the entry
+     * @param plays Play count of the replaced entry
+     */
+    synchronized void inheritPlays(String key, long plays) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.plays < plays) {
+            entry.plays = plays;
+            appendTouch(entry);
+        }
+    }
+
+    /**
+     * @param key Key of the entry
+     * @return Metadata of the entry or {@code null} if unknown
+     */
+    synchronized @Nullable Entry get(String key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Lists entries.
+     *
+     * @param filter Filter applied to the entries
+     * @return Matching entries, most recently used first
+     */
+    synchronized List<Entry> list(Predicate<Entry> filter) {
+        return entries.values().stream().filter(filter)
+                .sorted(Comparator.comparingLong(Entry::getLastAccess).reversed()).collect(Collectors.toList());
+    }
+
+    /**
+     * @param limit Maximum number of entries
+     * @return Most played entries, most played first
+     */
+    synchronized List<Entry> mostPlayed(int limit) {
+        return entries.values().stream().sorted(Comparator.comparingLong(Entry::getPlays).reversed()).limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return Number of entries
+     */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return Total size of the audio of all entries in bytes
+     */
+    synchronized long totalBytes() {
+        return entries.values().stream().mapToLong(Entry::getSize).sum();
+    }
+
+    /**
+     * Rewrites the log with the live entries only.
+     */
+    synchronized void compact() {
+        StringBuilder sb = new StringBuilder();
+        for (Entry entry : entries.values()) {
+            sb.append(gson.toJson(entry)).append('\n');
+        }
+        try {
+            writer.write(LOG_FILE_NAME, LOG_FILE_NAME, sb.toString().getBytes(StandardCharsets.UTF_8));
+            records = entries.size();
+            logger.debug("Compacted cache index to {} entries", records);
+        } catch (IOException e) {
+            logger.warn("Could not compact cache index: {}", e.getMessage());
+        }
+    }
+
+    private void appendTouch(Entry entry) {
+        Entry record = new Entry();
+        record.key = entry.key;
+        record.lastAccess = entry.lastAccess;
+        record.plays = entry.plays;
+        record.touched = true;
+        append(record);
+    }
+
+    private void append(Entry record) {
+        try {
+            Files.write(logFile.toPath(), (gson.toJson(record) + "\n").getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            records++;
+        } catch (IOException e) {
+            logger.warn("Could not append to cache index: {}", e.getMessage());
+        }
+        if (records > Math.max(MIN_COMPACTION_RECORDS, 2 * entries.size())) {
+            compact();
+        }
+    }
+
+    private void load() {
+        if (!logFile.exists()) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(logFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                records++;
+                try {
+                    Entry record = gson.fromJson(line, Entry.class);
+                    if (record == null) {
+                        continue;
+                    }
+                    if (record.removed) {
+                        entries.remove(record.key);
+                    } else if (record.touched) {
+                        Entry entry = entries.get(record.key);
+                        if (entry != null) {
+                            entry.lastAccess = record.lastAccess;
+                            entry.plays = record.plays;
+                        }
+                    } else {
+                        entries.put(record.key, record);
+                    }
+                } catch (JsonParseException e) {
+                    // a crash while appending can leave one partial line behind
+                    logger.debug("Skipping corrupt cache index record: {}", line);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Could not read cache index: {}", e.getMessage());
+        }
+        // drop entries whose audio file is gone
+        entries.values().removeIf(e -> !new File(folder, e.key + "." + e.format).exists());
+        logger.debug("Loaded {} cache index entries", entries.size());
+    }
+
+    /**
+     * Moves the metadata of {@code .txt} sidecar files written by earlier versions into the log. Only files named like
+     * cache entries are considered, a sidecar is deleted once its metadata is in the log or if its audio is gone.
+     */
+    private void migrateSidecars() {
+        File[] sidecars = folder.listFiles(
+                (dir, name) -> name.endsWith(SIDECAR_EXTENSION) && ENTRY_FILE.matcher(name).matches());
+        if (sidecars == null || sidecars.length == 0) {
+            return;
+        }
+        List<Entry> migrated = new ArrayList<>();
+        for (File sidecar : sidecars) {
+            String key = sidecar.getName().substring(0, sidecar.getName().length() - SIDECAR_EXTENSION.length());
+            File audio = new File(folder, key + ".wav");
+            if (audio.exists() && !entries.containsKey(key)) {
+                try {
+                    migrated.add(parseSidecar(key, sidecar, audio));
+                } catch (IOException e) {
+                    // kept for the next start
+                    logger.debug("Could not migrate {}: {}", sidecar.getName(), e.getMessage());
+                    continue;
+                }
+            }
+            if (!sidecar.delete()) {
+                logger.debug("Could not delete {}", sidecar.getName());
+            }
+        }
+        if (!migrated.isEmpty()) {
+            migrated.forEach(e -> entries.put(e.key, e));
+            compact();
+            logger.info("Migrated {} cache text files into {}", migrated.size(), LOG_FILE_NAME);
+        }
+    }
+
+    private Entry parseSidecar(String key, File sidecar, File audio) throws IOException {
+        // format: "Config: hostname=...,port=...,voice=<voice>" and "Text: <text>"
+        List<String> lines = Files.readAllLines(sidecar.toPath(), StandardCharsets.UTF_8);
+        Entry entry = new Entry();
+        entry.key = key;
+        entry.format = "wav";
+        entry.size = audio.length();
+        entry.created = audio.lastModified();
+        entry.lastAccess = entry.created;
+        for (String line : lines) {
+            if (line.startsWith("Config: ")) {
+                String config = line.substring("Config: ".length());
+                int voice = config.lastIndexOf(",voice=");
+                entry.config = voice < 0 ? config : config.substring(0, voice);
+                entry.voice = voice < 0 ? null : config.substring(voice + ",voice=".length());
+            } else if (line.startsWith("Text: ")) {
+                entry.text = line.substring("Text: ".length());
+            } else if (entry.text != null) {
+                // texts may span several lines
+                entry.text = entry.text + "\n" + line;
+            }
+        }
+        return entry;
+    }
+}
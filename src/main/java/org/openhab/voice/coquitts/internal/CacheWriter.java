@@ -0,0 +1,170 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Crash-safe writer for cache files.
+ * <p>
+ * Files are written to a temporary file, synced to disk and then published by an atomic rename, so readers either see
+ * the complete file or no file at all. Writes are serialized per key through a set of striped locks, so writes of
+ * different entries proceed in parallel while two writes of the same entry never interleave.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+class CacheWriter {
+
+    static final String TEMP_SUFFIX = ".tmp";
+
+    private static final int STRIPES = 32;
+    private static final int WAV_HEADER_SIZE = 12;
+
+    private final Logger logger = LoggerFactory.getLogger(CacheWriter.class);
+
+    private final File folder;
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+    private final AtomicLong tempCounter = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param folder Cache folder
+     */
+    CacheWriter(File folder) {
+        this.folder = folder;
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Returns the lock guarding all writes of a key.
+     *
+     * @param key Cache key, usually the file name without extension
+     * @return Lock of the stripe the key belongs to
+     */
+    ReentrantLock lockFor(String key) {
+        return locks[Math.floorMod(key.hashCode(), STRIPES)];
+    }
+
+    /**
+     * Atomically writes a file into the cache folder.
+     *
+     * @param key Cache key used for locking
+     * @param fileName Name of the file in the cache folder
+     * @param data File content
+     * @throws IOException if the file could not be written
+     */
+    void write(String key, String fileName, byte[] data) throws IOException {
+        Path target = new File(folder, fileName).toPath();
+        Path temp = new File(folder, fileName + "." + tempCounter.incrementAndGet() + TEMP_SUFFIX).toPath();
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            syncFolder();
+        } finally {
+            Files.deleteIfExists(temp);
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Cleans up after a crash: deletes left over temporary files and WAV files that are shorter than their header
+     * says, which may have been written by versions without atomic publishing.
+     *
+     * @return Number of deleted files
+     */
+    int recover() {
+        File[] files = folder.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        int deleted = 0;
+        for (File file : files) {
+            String name = file.getName();
+            boolean incomplete = name.endsWith(TEMP_SUFFIX) || (name.endsWith(".wav") && isTruncatedWav(file));
+            if (incomplete) {
+                if (file.delete()) {
+                    deleted++;
+                } else {
+                    logger.debug("Could not delete incomplete cache file {}", name);
+                }
+            }
+        }
+        if (deleted > 0) {
+            logger.info("Removed {} incomplete files from the cache", deleted);
+        }
+        return deleted;
+    }
+
+    private boolean isTruncatedWav(File file) {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            byte[] header = in.readNBytes(WAV_HEADER_SIZE);
+            if (header.length < WAV_HEADER_SIZE) {
+                return true;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt(0) != 0x46464952) { // "RIFF"
+                return true;
+            }
+            long riffSize = Integer.toUnsignedLong(buffer.getInt(4));
+            // streamed WAV files may declare the maximum size, only sizes beyond the file are truncations
+            return riffSize != 0xFFFFFFFFL && riffSize + 8 > file.length();
+        } catch (IOException e) {
+            logger.debug("Could not check cache file {}: {}", file.getName(), e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Syncs the directory entry of a rename, not supported on every platform.
+     */
+    private void syncFolder() {
+        try (FileChannel channel = FileChannel.open(folder.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            logger.trace("Could not sync cache folder: {}", e.getMessage());
+        }
+    }
+}
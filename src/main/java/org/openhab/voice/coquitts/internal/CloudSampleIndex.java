@@ -0,0 +1,201 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+/**
+ * Ids of the samples created on the cloud service, by speaker and text, kept in an append-only log file.
+ * <p>
+ * Every sample the cloud service creates is billed, and it keeps the samples of earlier requests. When a text is not
+ * cached locally, e.g. after the cache was wiped or on a new installation provisioned with a copy of this log, the
+ * audio of the known samples is downloaded again instead of creating new ones. Texts are keyed like in the local
+ * cache, by the complete normalized text and the voice, and map to the ids of the samples of their chunks in order.
+ * The log is kept outside the cache folder, so it survives purging the cache, and is compacted like the
+ * {@link CacheIndex}.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+class CloudSampleIndex {
+
+    static final String LOG_FILE_NAME = "cloud-samples.log";
+
+    private static final int MIN_COMPACTION_RECORDS = 100;
+
+    /**
+     * Format of a log record.
+     */
+    private static class Record {
+        String speaker = "";
+        String text = "";
+        @Nullable
+        List<String> ids;
+
+        Record() {
+        }
+
+        Record(String speaker, String text, @Nullable List<String> ids) {
+            this.speaker = speaker;
+            this.text = text;
+            this.ids = ids;
+        }
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(CloudSampleIndex.class);
+    private final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+
+    private final File logFile;
+    private final CacheWriter writer;
+    private final Map<String, Record> samples = new HashMap<>();
+
+    /**
+     * Number of records in the log file
+     */
+    private int records;
+
+    private final AtomicLong reused = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+
+    /**
+     * Constructor. Loads the log.
+     *
+     * @param folder Folder of the log file
+     */
+    CloudSampleIndex(File folder) {
+        if (!folder.exists()) {
+            folder.mkdirs();
+        }
+        this.logFile = new File(folder, LOG_FILE_NAME);
+        this.writer = new CacheWriter(folder);
+        load();
+    }
+
+    /**
+     * @param speaker Speaker id of the voice
+     * @param text Complete normalized text
+     * @return Ids of the samples of the chunks of the text in order, or {@code null} if none are known
+     */
+    synchronized @Nullable List<String> get(String speaker, String text) {
+        Record record = samples.get(key(speaker, text));
+        return record != null ? record.ids : null;
+    }
+
+    /**
+     * Records the samples of a text, after at least one of them was created by the cloud service.
+     *
+     * @param speaker Speaker id of the voice
+     * @param text Complete normalized text
+     * @param ids Ids of the samples of the chunks of the text in order
+     */
+    synchronized void put(String speaker, String text, List<String> ids) {
+        created.incrementAndGet();
+        Record record = new Record(speaker, text, List.copyOf(ids));
+        samples.put(key(speaker, text), record);
+        append(record);
+    }
+
+    /**
+     * Counts a text whose audio was downloaded again from its known samples instead of creating new ones.
+     */
+    void recordReuse() {
+        reused.incrementAndGet();
+    }
+
+    /**
+     * @return Number of known texts and how many were reused and created since the start, for the console
+     */
+    synchronized String getStatistics() {
+        return String.format("%d known, %d reused, %d created", samples.size(), reused.get(), created.get());
+    }
+
+    private static String key(String speaker, String text) {
+        return speaker + '\n' + text;
+    }
+
+    private void append(Record record) {
+        try {
+            Files.write(logFile.toPath(), (gson.toJson(record) + "\n").getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            records++;
+        } catch (IOException e) {
+            logger.warn("Could not append to cloud sample index: {}", e.getMessage());
+        }
+        if (records > Math.max(MIN_COMPACTION_RECORDS, 2 * samples.size())) {
+            compact();
+        }
+    }
+
+    private void compact() {
+        StringBuilder sb = new StringBuilder();
+        for (Record record : samples.values()) {
+            sb.append(gson.toJson(record)).append('\n');
+        }
+        try {
+            writer.write(LOG_FILE_NAME, LOG_FILE_NAME, sb.toString().getBytes(StandardCharsets.UTF_8));
+            records = samples.size();
+        } catch (IOException e) {
+            logger.warn("Could not compact cloud sample index: {}", e.getMessage());
+        }
+    }
+
+    private void load() {
+        if (!logFile.exists()) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(logFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                records++;
+                try {
+                    Record record = gson.fromJson(line, Record.class);
+                    if (record == null) {
+                        continue;
+                    }
+                    if (record.ids == null) {
+                        samples.remove(key(record.speaker, record.text));
+                    } else {
+                        samples.put(key(record.speaker, record.text), record);
+                    }
+                } catch (JsonParseException e) {
+                    // a crash while appending can leave one partial line behind
+                    logger.debug("Skipping corrupt cloud sample record: {}", line);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Could not read cloud sample index: {}", e.getMessage());
+        }
+        logger.debug("Loaded {} cloud samples", samples.size());
+    }
+}
@@ -12,27 +12,37 @@
  */
 package org.openhab.voice.coquitts.internal;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
 
 import org.eclipse.jdt.annotation.Nullable;
 import org.openhab.core.audio.AudioFormat;
 import org.openhab.core.auth.AuthenticationException;
+import org.openhab.core.common.ThreadPoolManager;
 import org.openhab.core.i18n.CommunicationException;
 import org.openhab.core.io.net.http.HttpClientFactory;
+import org.openhab.core.voice.TTSException;
 import org.openhab.voice.coquitts.internal.dto.AudioEncoding;
 import org.openhab.voice.coquitts.internal.dto.CoquiTTSSpeaker;
 import org.openhab.voice.coquitts.internal.dto.CoquiTTSVoice;
@@ -54,16 +64,20 @@ class CoquiAPI {
     protected static final String DEFAULT_VOICE_ID = "-default-";
     protected static final String DEFAULT_LANGUAGE_ID = "undefined";
 
+    /**
+     * Time between attempts to resolve the identity of a backend that did not report it
+     */
+    private static final long NAMESPACE_RETRY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
     /**
      * Logger
      */
     private final Logger logger = LoggerFactory.getLogger(CoquiAPI.class);
 
     /**
-     * Supported voices and locales
+     * Client, voices, formats and cache namespace the syntheses run on
      */
-
-    private ICoquiTTSClient client;
+    private final AtomicReference<RuntimeSnapshot> runtime = new AtomicReference<>(RuntimeSnapshot.empty());
 
     /**
      * Cache folder
@@ -78,16 +92,121 @@ class CoquiAPI {
     private final ConfigurationAdmin configAdmin;
     private final HttpClientFactory httpClientFactory;
 
+    /**
+     * Executes the backend requests of all clients
+     */
+    private final SynthesisScheduler scheduler = new SynthesisScheduler(2, 2, 1);
+
+    /**
+     * Recently failed voice and text combinations
+     */
+    private final NegativeCache negativeCache = new NegativeCache();
+
+    /**
+     * Crash-safe writer of cache entries
+     */
+    private final CacheWriter cacheWriter;
+
+    /**
+     * Metadata of the cache entries
+     */
+    private final CacheIndex cacheIndex;
+
+    /**
+     * Read-only cache bundles checked after the local cache
+     */
+    private volatile List<CacheBundle> bundles = List.of();
+
+    /**
+     * Second-level cache shared with other instances, checked after the bundles
+     */
+    private volatile @Nullable SharedCache sharedCache;
+
+    /**
+     * Publishes new entries to the shared cache and rekeys entries
+     */
+    private final ExecutorService backgroundExecutor = ThreadPoolManager.getPool(CoquiTTSService.SERVICE_ID);
+
+    /**
+     * Answers announcements from the cache while the backend is unavailable
+     */
+    private final DegradedMode degraded;
+
+    /**
+     * Ids of the samples created on the cloud service, survives purging the cache
+     */
+    private final CloudSampleIndex cloudSamples;
+
+    /**
+     * Sends periodic probes to keep a self-hosted backend warm
+     */
+    private final KeepWarm keepWarm;
+
+    /**
+     * Voice of the last synthesis, used by the keep-warm probes
+     */
+    private volatile @Nullable CoquiTTSVoice lastVoice;
+
+    /**
+     * Where syntheses were served from and backend latencies
+     */
+    private final SynthesisStatistics statistics = new SynthesisStatistics();
+
+    /**
+     * New cache entries, persisted after their audio has been returned
+     */
+    private final WriteBehindQueue writeBehind = new WriteBehindQueue(backgroundExecutor, WriteBehindQueue.CAPACITY);
+
+    /**
+     * Re-renders popular texts after the backend or the voices changed
+     */
+    private final PopularityRewarm rewarm;
+
+    /**
+     * Recent and slow synthesis traces
+     */
+    private final TraceRecorder traces = new TraceRecorder();
+
+    /**
+     * Set once the API is disposed, syntheses bound to a released client fail from then on
+     */
+    private volatile boolean disposed;
+
+    /**
+     * Namespace used while the identity of the backend is not known, the one it had when last used
+     */
+    private volatile String fallbackNamespace = RuntimeSnapshot.NO_BACKEND;
+
+    /**
+     * Time of the last attempt to resolve the backend identity in the background
+     */
+    private volatile long namespaceAttempt;
+    private final AtomicBoolean resolvingNamespace = new AtomicBoolean();
+
+    /**
+     * Canonicalizes texts before they are cached and synthesized
+     */
+    private TextNormalizer normalizer = new TextNormalizer(false, false);
+
     /**
      * Constructor.
      *
      * @param cacheFolder Service cache folder
+     * @param dataFolder Folder of data that must survive purging the cache
      * @param clientFactory
      */
-    CoquiAPI(ConfigurationAdmin configAdmin, File cacheFolder, HttpClientFactory clientFactory) {
+    CoquiAPI(ConfigurationAdmin configAdmin, File cacheFolder, File dataFolder, HttpClientFactory clientFactory) {
         this.configAdmin = configAdmin;
         this.cacheFolder = cacheFolder;
         this.httpClientFactory = clientFactory;
+        this.cacheWriter = new CacheWriter(cacheFolder);
+        cacheWriter.recover();
+        this.cacheIndex = new CacheIndex(cacheFolder, cacheWriter);
+        this.cloudSamples = new CloudSampleIndex(dataFolder);
+        this.degraded = new DegradedMode(cacheIndex, cacheFolder);
+        this.rewarm = new PopularityRewarm(cacheIndex, backgroundExecutor, this::rerender);
+        this.keepWarm = new KeepWarm(ThreadPoolManager.getScheduledPool(CoquiTTSService.SERVICE_ID), scheduler,
+                this::sendProbe);
         logger.debug("CoquiAPI object created");
     }
 
@@ -98,29 +217,685 @@ class CoquiAPI {
      */
     void setConfig(CoquiTTSConfig config) {
         this.config = config;
+        normalizer = new TextNormalizer(config.normalizeText, config.spellOutNumbers);
+        scheduler.setLimits(config.maxConcurrentRequests, config.interactiveConcurrency,
+                config.backgroundConcurrency);
+        try {
+            scheduler.setExecutionMode(
+                    SynthesisScheduler.ExecutionMode.valueOf(config.executionMode.toUpperCase(Locale.ROOT)));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Unknown execution mode '{}', using platform threads.", config.executionMode);
+            scheduler.setExecutionMode(SynthesisScheduler.ExecutionMode.PLATFORM);
+        }
 
         String hostname = config.hostname;
+        ICoquiTTSClient client = null;
         if (config.isCloudAccount) {
             if (config.apiKey != null && !config.apiKey.isEmpty()) {
-                this.client = new CoquiCloudTTSClient(config.apiKey, httpClientFactory);
+                client = new CoquiCloudTTSClient(config.apiKey, config.cloudUrl, httpClientFactory, scheduler,
+                        cloudSamples);
             } else {
                 throw new IllegalArgumentException("Coqui using cloud account but no api key given");
             }
         } else {
             if (hostname != null && !hostname.isEmpty() && config.port != null && config.scheme != null) {
-                this.client = new TTSClient(config.hostname, config.port);
+                client = new TTSClient(config.hostname, config.port, httpClientFactory, scheduler);
             } else {
                 logger.error("Self hosted option was set but one of hostname port or scheme has not been supplied.");
             }
         }
 
+        List<CacheBundle> previousBundles = bundles;
+        bundles = openBundles(config.cacheBundles);
+        // lookups still reading an old bundle fail and fall through to the next source
+        closeBundles(previousBundles);
+        sharedCache = createSharedCache(config);
+        String traceFile = config.traceFile;
+        traces.configure(config.traceRequests, config.slowTraceThreshold,
+                traceFile == null ? null : resolve(traceFile));
+
+        // probes cost credits on the cloud service
+        if (config.isCloudAccount && config.keepWarmInterval > 0) {
+            logger.debug("Keep-warm probes are only sent to self-hosted servers.");
+        }
+        keepWarm.start(Duration.ofSeconds(config.isCloudAccount ? 0 : config.keepWarmInterval));
+        rewarm.configure(config.rewarmTopTexts, config.rewarmCharacterBudget);
+        degraded.configure(config.degradedMode, config.degradedProbeTimeout, config.fallbackClips, this::resolve);
+
+        // syntheses keep running on the current snapshot while the new one warms up
+        RuntimeSnapshot next = warmUp(client, config);
+        publish(next);
+        String resolved = next.getNamespace();
+        if (resolved != null) {
+            adoptNamespace(resolved);
+        } else {
+            String lastKnown = getLastKnownNamespace();
+            fallbackNamespace = lastKnown != null ? lastKnown : config.toConfigString();
+            namespaceAttempt = 0;
+        }
+        rewarm.setVoices(next.getVoices());
+
         // maintain cache
         if (config.purgeCache) {
-            File[] files = cacheFolder.listFiles();
-            if (files != null && files.length > 0) {
-                Arrays.stream(files).forEach(File::delete);
+            logger.debug("Cache purged, {} entries removed.", purgeCache());
+        }
+    }
+
+    /**
+     * Removes all entries from the local cache. Only files named like cache entries are deleted, the logs, files
+     * being written and user files in the cache folder like bundles, fallback clips and traces are kept.
+     *
+     * @return Number of removed entries
+     */
+    int purgeCache() {
+        // queued entries are dropped, writes already running finish before their entries are removed
+        writeBehind.clear();
+        int purged = evict(e -> true);
+        // files of entries that were never indexed, e.g. left behind by older versions
+        File[] orphans = cacheFolder.listFiles((folder, name) -> CacheIndex.ENTRY_FILE.matcher(name).matches());
+        for (File file : orphans == null ? new File[0] : orphans) {
+            String key = removeExtension(file.getName());
+            ReentrantLock lock = cacheWriter.lockFor(key);
+            lock.lock();
+            try {
+                // an entry written since the eviction is indexed and kept
+                if (cacheIndex.get(key) == null) {
+                    Files.deleteIfExists(file.toPath());
+                }
+            } catch (IOException e) {
+                logger.warn("Could not delete cache file {}: {}", file.getName(), e.getMessage());
+            } finally {
+                lock.unlock();
+            }
+        }
+        cacheIndex.compact();
+        return purged;
+    }
+
+    /**
+     * Releases the resources of the API, queued backend requests are cancelled.
+     */
+    void dispose() {
+        disposed = true;
+        keepWarm.stop();
+        publish(RuntimeSnapshot.empty());
+        scheduler.shutdown();
+        writeBehind.flush();
+        cacheIndex.compact();
+        closeBundles(bundles);
+        bundles = List.of();
+    }
+
+    /**
+     * Builds a snapshot for a new client: resolves the backend identity and loads the voices.
+     *
+     * @throws CommunicationException if the voices could not be loaded, the new client is discarded then
+     */
+    private RuntimeSnapshot warmUp(@Nullable ICoquiTTSClient client, CoquiTTSConfig config) {
+        String backendName = config.isCloudAccount ? config.cloudUrl : config.hostname + ":" + config.port;
+        String resolved = config.cacheNamespace;
+        List<CoquiTTSVoice> voices = new ArrayList<>();
+        if (client != null) {
+            if (resolved == null) {
+                try {
+                    resolved = resolveBackendIdentity(client);
+                } catch (CommunicationException e) {
+                    // resolved in the background by the first lookup, the cache keeps serving meanwhile
+                    logger.debug("Could not resolve backend identity: {}", e.getMessage());
+                }
+            }
+            try {
+                voices.addAll(listVoices(client));
+            } catch (CommunicationException e) {
+                client.close();
+                throw e;
+            }
+        }
+        if (voices.isEmpty()) {
+            voices.add(new CoquiTTSVoice(new Locale("Undefined"), "Default Voice", CoquiAPI.DEFAULT_LANGUAGE_ID,
+                    CoquiAPI.DEFAULT_VOICE_ID));
+        }
+        if (logger.isTraceEnabled()) {
+            for (CoquiTTSVoice voice : voices) {
+                logger.trace("Coqui Cloud TTS voice: {}", voice.getLabel());
+            }
+        }
+        return new RuntimeSnapshot(new RuntimeSnapshot.Lease(client), backendName, resolved, voices,
+                getAudioFormats());
+    }
+
+    /**
+     * Publishes a snapshot. The client of the previous snapshot is released when its last synthesis is done.
+     */
+    private void publish(RuntimeSnapshot next) {
+        RuntimeSnapshot previous = runtime.getAndSet(next);
+        if (previous.getLease() != next.getLease()) {
+            int users = previous.getLease().getUsers();
+            if (users > 0) {
+                logger.debug("Releasing the previous backend client after {} running syntheses", users);
+            }
+            previous.getLease().retire();
+        }
+    }
+
+    /**
+     * @return Snapshot new syntheses run on
+     */
+    RuntimeSnapshot getRuntime() {
+        return runtime.get();
+    }
+
+    /**
+     * Acquires the snapshot a synthesis runs on: the snapshot of its context, or the current snapshot if the client
+     * of that one has been released already. It must be released with {@link RuntimeSnapshot.Lease#release()}.
+     *
+     * @throws TTSException if the client of the context has been released and the API has been disposed
+     */
+    private RuntimeSnapshot acquire(SynthesisContext context) throws TTSException {
+        RuntimeSnapshot bound = context.getRuntime();
+        if (bound.getLease().acquire()) {
+            return bound;
+        }
+        while (true) {
+            if (disposed) {
+                throw new TTSException("The Coqui TTS service has been disposed");
+            }
+            // a released client has always been replaced by a newer one
+            RuntimeSnapshot current = runtime.get();
+            if (current.getLease().acquire()) {
+                context.bind(current);
+                return current;
+            }
+        }
+    }
+
+    /**
+     * @return Metadata of the cache entries
+     */
+    CacheIndex getCacheIndex() {
+        return cacheIndex;
+    }
+
+    /**
+     * @return Normalizer applied to all texts
+     */
+    TextNormalizer getNormalizer() {
+        return normalizer;
+    }
+
+    /**
+     * @return Scheduler of the backend requests
+     */
+    SynthesisScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * @return Recently failed voice and text combinations
+     */
+    NegativeCache getNegativeCache() {
+        return negativeCache;
+    }
+
+    /**
+     * @return Degraded mode, used by the console commands
+     */
+    DegradedMode getDegradedMode() {
+        return degraded;
+    }
+
+    /**
+     * @return Ids of the samples created on the cloud service
+     */
+    CloudSampleIndex getCloudSamples() {
+        return cloudSamples;
+    }
+
+    /**
+     * @return Where syntheses were served from and backend latencies
+     */
+    SynthesisStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Removes matching entries from the local cache.
+     *
+     * @param filter Selects the entries to remove
+     * @return Number of removed entries
+     */
+    int evict(Predicate<CacheIndex.Entry> filter) {
+        // queued entries are not indexed yet
+        writeBehind.flush();
+        int evicted = 0;
+        for (CacheIndex.Entry entry : cacheIndex.list(filter)) {
+            ReentrantLock lock = cacheWriter.lockFor(entry.getKey());
+            lock.lock();
+            try {
+                Files.deleteIfExists(new File(cacheFolder, entry.getKey() + "." + entry.format).toPath());
+                cacheIndex.remove(entry.getKey());
+                evicted++;
+            } catch (IOException e) {
+                logger.warn("Could not evict cache entry {}: {}", entry.getKey(), e.getMessage());
+            } finally {
+                lock.unlock();
+            }
+        }
+        logger.debug("Evicted {} cache entries", evicted);
+        return evicted;
+    }
+
+    /**
+     * @return Keep-warm probes and their health metrics
+     */
+    KeepWarm getKeepWarm() {
+        return keepWarm;
+    }
+
+    /**
+     * @return Voice of the last synthesis, if any
+     */
+    @Nullable CoquiTTSVoice getLastVoice() {
+        return lastVoice;
+    }
+
+    /**
+     * Synthesizes the probe text with the last used voice, bypassing all caches.
+     */
+    private void sendProbe() throws IOException {
+        CoquiTTSVoice voice = lastVoice;
+        if (voice == null) {
+            voice = new CoquiTTSVoice(new Locale("Undefined"), "Default Voice", DEFAULT_LANGUAGE_ID, DEFAULT_VOICE_ID);
+        }
+        SynthesisContext context = newContext(SynthesisScheduler.Lane.BACKGROUND);
+        RuntimeSnapshot snapshot;
+        try {
+            snapshot = acquire(context);
+        } catch (TTSException e) {
+            throw new IOException(e.getMessage());
+        }
+        try {
+            ICoquiTTSClient client = snapshot.getClient();
+            if (client != null) {
+                client.synthesize(KeepWarm.PROBE_TEXT, voice, context);
+                degraded.recordSuccess();
+            }
+        } catch (SynthesisRejectedException e) {
+            // the backend answered
+            throw e;
+        } catch (IOException e) {
+            degraded.recordUnreachable();
+            throw e;
+        } finally {
+            snapshot.getLease().release();
+        }
+    }
+
+    /**
+     * Exports the local cache into a bundle.
+     *
+     * @param target Bundle file
+     * @return Number of exported entries
+     * @throws IOException if the bundle could not be written
+     */
+    int exportCache(File target) throws IOException {
+        writeBehind.flush();
+        return CacheBundle.export(target, cacheFolder, cacheIndex.list(e -> true));
+    }
+
+    /**
+     * Copies all entries of a bundle into the local cache.
+     *
+     * @param source Bundle file
+     * @return Number of imported entries, entries already in the local cache are skipped
+     * @throws IOException if the bundle could not be read or an entry could not be written
+     */
+    int importCache(File source) throws IOException {
+        int imported = 0;
+        try (CacheBundle bundle = CacheBundle.open(source)) {
+            for (CacheIndex.Entry entry : bundle.getEntries()) {
+                String fileName = entry.key + "." + entry.format;
+                if (new File(cacheFolder, fileName).exists()) {
+                    continue;
+                }
+                byte[] audio = bundle.read(entry.key);
+                if (audio == null) {
+                    continue;
+                }
+                cacheWriter.write(entry.key, fileName, audio);
+                cacheIndex.put(entry);
+                imported++;
+            }
+        }
+        logger.info("Imported {} entries from cache bundle {}", imported, source);
+        return imported;
+    }
+
+    private List<CacheBundle> openBundles(List<String> paths) {
+        List<CacheBundle> opened = new ArrayList<>();
+        for (String path : paths) {
+            File file = resolve(path);
+            try {
+                CacheBundle bundle = CacheBundle.open(file);
+                opened.add(bundle);
+                logger.debug("Serving {} entries from cache bundle {}", bundle.getEntries().size(), file);
+            } catch (IOException e) {
+                logger.warn("Could not open cache bundle {}: {}", file, e.getMessage());
+            }
+        }
+        return List.copyOf(opened);
+    }
+
+    private void closeBundles(List<CacheBundle> closed) {
+        for (CacheBundle bundle : closed) {
+            try {
+                bundle.close();
+            } catch (IOException e) {
+                logger.debug("Could not close cache bundle {}: {}", bundle.getFile(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Resolves a configured path, relative paths against the cache folder.
+     */
+    private File resolve(String path) {
+        File file = new File(path);
+        return file.isAbsolute() ? file : new File(cacheFolder, path);
+    }
+
+    /**
+     * Returns the namespace of the cache keys: the configured namespace or the identity of the backend.
+     *
+     * @return Namespace of the cache keys
+     */
+    String getNamespace() {
+        return getNamespace(runtime.get());
+    }
+
+    private String getNamespace(RuntimeSnapshot snapshot) {
+        String current = snapshot.getNamespace();
+        if (current != null) {
+            return current;
+        }
+        RuntimeSnapshot latest = runtime.get();
+        String resolved = latest.getLease() == snapshot.getLease() ? latest.getNamespace() : null;
+        if (resolved != null) {
+            return resolved;
+        }
+        resolveNamespaceInBackground(snapshot);
+        // serve the cache while the backend identity is unknown, using the identity it had when last used
+        return fallbackNamespace;
+    }
+
+    /**
+     * Resolves the namespace of a snapshot whose backend identity was not known when it was built. At most one
+     * resolution runs at a time, and failed ones are retried after {@link #NAMESPACE_RETRY_MILLIS}.
+     */
+    private void resolveNamespaceInBackground(RuntimeSnapshot snapshot) {
+        long now = System.currentTimeMillis();
+        if (now - namespaceAttempt < NAMESPACE_RETRY_MILLIS || !resolvingNamespace.compareAndSet(false, true)) {
+            return;
+        }
+        namespaceAttempt = now;
+        try {
+            backgroundExecutor.execute(() -> {
+                try {
+                    resolveNamespace(snapshot);
+                } finally {
+                    resolvingNamespace.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            resolvingNamespace.set(false);
+            logger.debug("Could not resolve cache namespace in the background: {}", e.getMessage());
+        }
+    }
+
+    private void resolveNamespace(RuntimeSnapshot snapshot) {
+        if (!snapshot.getLease().acquire()) {
+            // replaced by a newer snapshot
+            return;
+        }
+        String resolved;
+        try {
+            ICoquiTTSClient client = snapshot.getClient();
+            if (client == null) {
+                return;
             }
-            logger.debug("Cache purged.");
+            resolved = resolveBackendIdentity(client);
+        } catch (CommunicationException e) {
+            logger.debug("Could not resolve backend identity: {}", e.getMessage());
+            return;
+        } finally {
+            snapshot.getLease().release();
+        }
+        RuntimeSnapshot current = runtime.get();
+        if (current.getLease() == snapshot.getLease() && current.getNamespace() == null
+                && runtime.compareAndSet(current, current.withNamespace(resolved))) {
+            adoptNamespace(resolved);
+        }
+    }
+
+    /**
+     * Asks the backend for its identity in the background lane, within the request timeout.
+     *
+     * @throws CommunicationException if the backend did not answer in time or its identity could not be determined
+     */
+    private String resolveBackendIdentity(ICoquiTTSClient client) {
+        try {
+            return scheduler.execute(newContext(SynthesisScheduler.Lane.BACKGROUND), client::getBackendIdentity);
+        } catch (IOException e) {
+            throw new CommunicationException(e);
+        }
+    }
+
+    /**
+     * Starts using a resolved namespace: moves entries of earlier versions to it, and re-renders popular texts if it
+     * differs from the namespace used last.
+     */
+    private void adoptNamespace(String adopted) {
+        logger.debug("Using cache namespace {}", adopted);
+        String previous = getLastKnownNamespace();
+        try {
+            backgroundExecutor.execute(() -> rekeyLegacyEntries(adopted));
+        } catch (RejectedExecutionException e) {
+            logger.debug("Could not rekey cache entries: {}", e.getMessage());
+        }
+        if (previous != null && !previous.equals(adopted)) {
+            // the popular texts of the previous backend are cold now
+            rewarm.trigger("namespace changed from " + previous + " to " + adopted);
+        }
+    }
+
+    /**
+     * @return Namespace of the most recently used cache entry, {@code null} if no entry has one
+     */
+    private @Nullable String getLastKnownNamespace() {
+        return cacheIndex.list(CoquiAPI::hasNamespace).stream().map(CacheIndex.Entry::getConfig).findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * @return Re-rendering of popular texts
+     */
+    PopularityRewarm getRewarm() {
+        return rewarm;
+    }
+
+    /**
+     * Renders an indexed text under the current key, keeping its play count.
+     *
+     * @return {@code true} if the text was rendered, {@code false} if it was already cached or failed
+     */
+    private boolean rerender(CacheIndex.Entry entry, CoquiTTSVoice voice) {
+        String text = entry.getText();
+        if (text == null) {
+            return false;
+        }
+        // indexed texts are normalized already
+        String key = getUniqueFilenameForText(text, voice.getTechnicalName());
+        String format = entry.format == null ? "wav" : entry.format;
+        if (new File(cacheFolder, key + "." + format).exists() || writeBehind.get(key) != null
+                || bundles.stream().anyMatch(b -> b.contains(key))) {
+            return false;
+        }
+        try {
+            byte[] audio = synthesizeNormalizedSpeech(text, voice, AudioFormat.CODEC_PCM_SIGNED,
+                    newContext(SynthesisScheduler.Lane.BACKGROUND));
+            if (audio == null) {
+                return false;
+            }
+        } catch (TTSException e) {
+            logger.debug("Could not re-render '{}': {}", text, e.getMessage());
+            return false;
+        }
+        cacheIndex.inheritPlays(key, entry.getPlays());
+        return true;
+    }
+
+    /**
+     * Entries written by earlier versions are keyed by hostname and port. They are assumed to have been produced by
+     * the backend first identified after the upgrade, and moved to keys of its namespace.
+     */
+    private void rekeyLegacyEntries(String namespace) {
+        int rekeyed = 0;
+        for (CacheIndex.Entry entry : cacheIndex.list(e -> !hasNamespace(e))) {
+            String legacyText = entry.getText();
+            String voice = entry.getVoice();
+            if (legacyText == null || voice == null) {
+                continue;
+            }
+            // earlier versions keyed the raw text, lookups use the normalized one. The language of the voice is not
+            // recorded, numbers are not spelled out then and such entries are rendered again on their next use
+            String text = normalizer.normalize(legacyText, Locale.ROOT);
+            String key = createKey(namespace, text, voice);
+            File source = new File(cacheFolder, entry.getKey() + "." + entry.format);
+            File target = new File(cacheFolder, key + "." + entry.format);
+            ReentrantLock lock = cacheWriter.lockFor(key);
+            lock.lock();
+            try {
+                if (target.exists()) {
+                    Files.deleteIfExists(source.toPath());
+                } else {
+                    Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                    CacheIndex.Entry rekeyedEntry = new CacheIndex.Entry(key, text, voice, namespace,
+                            entry.format == null ? "wav" : entry.format, entry.getSize());
+                    rekeyedEntry.created = entry.created;
+                    rekeyedEntry.lastAccess = entry.lastAccess;
+                    rekeyedEntry.plays = entry.plays;
+                    cacheIndex.put(rekeyedEntry);
+                    rekeyed++;
+                }
+                cacheIndex.remove(entry.getKey());
+            } catch (IOException e) {
+                logger.debug("Could not rekey cache entry {}: {}", entry.getKey(), e.getMessage());
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (rekeyed > 0) {
+            logger.info("Moved {} cache entries to namespace {}", rekeyed, namespace);
+        }
+    }
+
+    private static boolean hasNamespace(CacheIndex.Entry entry) {
+        String config = entry.getConfig();
+        return config != null && !config.startsWith(CoquiTTSConfig.LEGACY_CONFIG_PREFIX);
+    }
+
+    private @Nullable SharedCache createSharedCache(CoquiTTSConfig config) {
+        String location = config.sharedCacheLocation;
+        String type = config.sharedCacheType.toLowerCase(Locale.ROOT);
+        if ("none".equals(type)) {
+            return null;
+        }
+        if (location == null) {
+            logger.warn("Shared cache type '{}' configured without location, shared cache disabled.", type);
+            return null;
+        }
+        try {
+            SharedCache cache;
+            switch (type) {
+                case "directory":
+                    cache = new DirectorySharedCache(new File(location));
+                    break;
+                case "http":
+                    cache = new HttpSharedCache(location, httpClientFactory.getCommonHttpClient());
+                    break;
+                default:
+                    logger.warn("Unknown shared cache type '{}', shared cache disabled.", type);
+                    return null;
+            }
+            logger.debug("Using shared cache {}", cache);
+            return cache;
+        } catch (IOException e) {
+            logger.warn("Could not open shared cache: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Looks up an entry in the shared cache and copies it into the local cache. Other instances may have written
+     * anything there, so only complete WAV clips are used.
+     *
+     * @param context Synthesis whose deadline bounds the lookup
+     * @return Audio of the entry or {@code null} if the shared cache does not contain it or is not reachable
+     */
+    private byte @Nullable [] readSharedCache(String text, File cacheFile, String voiceName, String namespace,
+            SynthesisContext context) {
+        SharedCache shared = sharedCache;
+        if (shared == null) {
+            return null;
+        }
+        String fileName = getSharedFileName(cacheFile.getName());
+        byte[] audio;
+        try {
+            audio = shared.get(fileName, context.getRemainingMillis());
+            if (audio != null) {
+                WaveUtils.readPcm(new ByteArrayInputStream(audio), audio.length);
+            }
+        } catch (IOException e) {
+            logger.debug("Could not read {} from shared cache {}: {}", fileName, shared, e.getMessage());
+            return null;
+        }
+        if (audio != null) {
+            logger.debug("Audio file {} was found in shared cache {}.", fileName, shared);
+            saveAudioAndTextToFile(text, cacheFile, audio, voiceName, namespace);
+        }
+        return audio;
+    }
+
+    /**
+     * Voice names may contain characters that are not allowed in the file names of the shared directory or in the
+     * URLs of the blob store, like slashes.
+     *
+     * @param fileName Name of the local cache file
+     * @return Name of the entry in the shared cache
+     */
+    private static String getSharedFileName(String fileName) {
+        return URLEncoder.encode(fileName, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Publishes a new entry to the shared cache in the background.
+     */
+    private void publishToSharedCache(String fileName, byte[] audio) {
+        SharedCache shared = sharedCache;
+        if (shared == null) {
+            return;
+        }
+        try {
+            backgroundExecutor.execute(() -> {
+                try {
+                    shared.put(getSharedFileName(fileName), audio);
+                    logger.debug("Published {} to shared cache {}", fileName, shared);
+                } catch (IOException e) {
+                    logger.debug("Could not publish {} to shared cache {}: {}", fileName, shared, e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.debug("Could not publish {} to shared cache: {}", fileName, e.getMessage());
         }
     }
 
@@ -135,14 +910,53 @@ class CoquiAPI {
         return formats;
     }
 
-    protected List<CoquiTTSVoice> listVoices() throws CommunicationException {
-        List<Locale> locales = listLocales();
+    private Set<AudioFormat> getAudioFormats() {
+        Set<AudioFormat> result = new HashSet<>();
+        for (String format : getSupportedAudioFormats()) {
+            AudioFormat audioFormat = getAudioFormat(format);
+            if (audioFormat != null) {
+                result.add(audioFormat);
+                logger.trace("Audio format supported: {}", format);
+            } else {
+                logger.trace("Audio format not supported: {}", format);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Helper to create AudioFormat objects from Coqui names.
+     *
+     * @param format Coqui audio format.
+     * @return Audio format object.
+     */
+    private @Nullable AudioFormat getAudioFormat(String format) {
+        Integer bitDepth = 16;
+        Long frequency = 44100L;
+
+        AudioEncoding encoding = AudioEncoding.valueOf(format);
+
+        switch (encoding) {
+            case LINEAR16:
+                // we use by default: wav, 44khz_16bit_mono
+                return new AudioFormat(AudioFormat.CONTAINER_WAVE, AudioFormat.CODEC_PCM_SIGNED, null, bitDepth, null,
+                        frequency);
+            default:
+                logger.warn("Audio format {} is not yet supported.", format);
+                return null;
+        }
+    }
+
+    private List<CoquiTTSVoice> listVoices(ICoquiTTSClient client) throws CommunicationException {
+        List<Locale> locales = listLocales(client);
         // locales.sort(null);
 
         List<CoquiTTSVoice> voicess = new ArrayList<>();
+        // voices may have been added or restored, give failed texts another chance
+        negativeCache.clear();
         try {
 
-            for (CoquiTTSSpeaker s : client.getSpeakers()) {
+            for (CoquiTTSSpeaker s : scheduler.execute(SynthesisScheduler.Lane.INTERACTIVE, client::getSpeakers)) {
                 for (Locale l : locales) {
                     CoquiTTSVoice v = new CoquiTTSVoice(l, s.getLabel(), l.getLanguage(), s.getSpeakerId());
                     voicess.add(v);
@@ -154,10 +968,10 @@ class CoquiAPI {
         }
     }
 
-    private List<Locale> listLocales() throws CommunicationException {
+    private List<Locale> listLocales(ICoquiTTSClient client) throws CommunicationException {
         List<Locale> locales = new ArrayList<>();
         try {
-            for (String s : client.getLanguages()) {
+            for (String s : scheduler.execute(SynthesisScheduler.Lane.INTERACTIVE, client::getLanguages)) {
                 Locale l = new Locale(s);
                 locales.add(l);
             }
@@ -182,28 +996,277 @@ class CoquiAPI {
         }
     }
 
-    public byte[] synthesizeSpeech(String text, CoquiTTSVoice voice, String codec) {
+    /**
+     * Creates the context of a synthesis with the configured deadline.
+     *
+     * @param lane Scheduler lane used for the backend requests
+     * @return New context, its deadline starts now
+     */
+    SynthesisContext newContext(SynthesisScheduler.Lane lane) {
+        return new SynthesisContext(lane, getRequestTimeout(), runtime.get(), null);
+    }
+
+    /**
+     * Creates the context of an announcement, traced if tracing is enabled. The trace must be finished with
+     * {@link #finishTrace(SynthesisContext)}.
+     *
+     * @param name Name of the trace, e.g. the announced text
+     * @param timeout Time the synthesis may take, usually {@link #getRequestTimeout()}
+     * @return New context on the interactive lane, its deadline starts now
+     */
+    SynthesisContext newTracedContext(String name, Duration timeout) {
+        return new SynthesisContext(SynthesisScheduler.Lane.INTERACTIVE, timeout, runtime.get(),
+                traces.isEnabled() ? new Trace(name) : null);
+    }
+
+    /**
+     * Finishes the trace of a context and records it.
+     *
+     * @param context Context created by {@link #newTracedContext(String, Duration)}
+     */
+    void finishTrace(SynthesisContext context) {
+        Trace trace = context.getTrace();
+        if (trace != null) {
+            trace.getRoot().close();
+            traces.record(trace);
+        }
+    }
+
+    /**
+     * @return Recent synthesis traces
+     */
+    TraceRecorder getTraces() {
+        return traces;
+    }
+
+    /**
+     * @return Configured deadline of a synthesis
+     */
+    Duration getRequestTimeout() {
+        CoquiTTSConfig current = config;
+        return Duration.ofSeconds(current != null ? current.requestTimeout : CoquiTTSConfig.DEFAULT_REQUEST_TIMEOUT);
+    }
+
+    public byte[] synthesizeSpeech(String text, CoquiTTSVoice voice, String codec) throws TTSException {
+        return synthesizeSpeech(text, voice, codec, newContext(SynthesisScheduler.Lane.INTERACTIVE));
+    }
+
+    /**
+     * Synthesizes the text or loads it from the cache. The text is normalized first if enabled, so equivalent texts
+     * share one cache entry.
+     *
+     * @param text Text to synthesize
+     * @param voice Voice parameter
+     * @param codec Requested codec
+     * @param context Lane and deadline of the backend requests on a cache miss
+     * @return Audio data or {@code null} if synthesis failed
+     * @throws TTSException if the same voice and text failed recently
+     */
+    public byte[] synthesizeSpeech(String text, CoquiTTSVoice voice, String codec, SynthesisContext context)
+            throws TTSException {
+        String normalized = normalizer.normalize(text, voice.getLocale());
+        if (!degraded.isEnabled() || context.getLane() != SynthesisScheduler.Lane.INTERACTIVE) {
+            return synthesizeNormalizedSpeech(normalized, voice, codec, context);
+        }
+        // rejected and backed-off texts fail as usual, only an unreachable backend is answered from the cache
+        byte[] audio = synthesizeNormalizedSpeech(normalized, voice, codec, context);
+        if (audio == null && !Thread.currentThread().isInterrupted() && degraded.isUnreachable()) {
+            audio = serveDegraded(normalized, voice, context, "unreachable");
+        }
+        return audio;
+    }
+
+    /**
+     * Finds a stale cache entry or a fallback clip to announce instead of a text the backend could not synthesize.
+     *
+     * @return Audio data or {@code null} if there is none
+     */
+    private byte @Nullable [] serveDegraded(String text, CoquiTTSVoice voice, SynthesisContext context,
+            @Nullable String reason) {
+        try (Trace.Span span = context.span("degraded")) {
+            DegradedMode.Answer answer = degraded.find(text, voice.getTechnicalName());
+            if (answer == null) {
+                span.setDetail("no clip");
+                return null;
+            }
+            span.setDetail(answer.match);
+            statistics.record(SynthesisStatistics.Source.DEGRADED);
+            logger.info("Coqui backend unavailable ({}), announcing '{}' from a {} match", reason, text, answer.match);
+            return answer.audio;
+        }
+    }
+
+    /**
+     * Probes the backend before an announcement, if degraded mode is enabled and no request succeeded recently.
+     *
+     * @return {@code false} if the backend is unreachable and the announcement should not wait for it
+     */
+    private boolean isReachable(RuntimeSnapshot snapshot, SynthesisContext context) {
+        if (context.getLane() != SynthesisScheduler.Lane.INTERACTIVE || !degraded.shouldProbe()) {
+            return true;
+        }
+        if (degraded.isUnreachable()) {
+            return false;
+        }
+        ICoquiTTSClient client = snapshot.getClient();
+        if (client == null) {
+            return true;
+        }
+        try (Trace.Span span = context.span("probe")) {
+            try {
+                client.probe(degraded.getProbeTimeoutMillis());
+                return true;
+            } catch (IOException e) {
+                span.setDetail(String.valueOf(e.getMessage()));
+                logger.debug("Coqui backend did not answer the probe: {}", e.getMessage());
+                degraded.recordUnreachable();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Checks if the text is served without calling the backend, from the local cache or a bundle.
+     *
+     * @param text Text, normalized like by {@link #synthesizeSpeech(String, CoquiTTSVoice, String)}
+     * @param voice Voice parameter
+     * @param codec Requested codec
+     * @return {@code true} if the text is cached
+     */
+    boolean isCached(String text, CoquiTTSVoice voice, String codec) {
+        String key = getUniqueFilenameForText(normalizer.normalize(text, voice.getLocale()),
+                voice.getTechnicalName());
+        if (new File(cacheFolder, key + "." + getFormatForCodec(codec)[1]).exists() || writeBehind.get(key) != null) {
+            return true;
+        }
+        return bundles.stream().anyMatch(b -> b.contains(key));
+    }
+
+    /**
+     * Synthesizes part of an utterance or loads it from the cache. Unlike complete texts, fragments are neither
+     * capitalized nor terminated by the normalization.
+     *
+     * @param fragment Fragment to synthesize
+     * @param voice Voice parameter
+     * @param codec Requested codec
+     * @param context Lane and deadline of the backend requests on a cache miss
+     * @return Audio data or {@code null} if synthesis failed
+     * @throws TTSException if the same voice and fragment failed recently
+     */
+    byte[] synthesizeFragment(String fragment, CoquiTTSVoice voice, String codec, SynthesisContext context)
+            throws TTSException {
+        return synthesizeNormalizedSpeech(normalizer.normalizeFragment(fragment, voice.getLocale()), voice, codec,
+                context);
+    }
+
+    /**
+     * Synthesizes a text that has already been normalized or loads it from the cache.
+     */
+    private byte[] synthesizeNormalizedSpeech(String text, CoquiTTSVoice voice, String codec,
+            SynthesisContext context) throws TTSException {
+        RuntimeSnapshot snapshot = acquire(context);
+        try {
+            return synthesizeNormalizedSpeech(text, voice, codec, context, snapshot);
+        } finally {
+            snapshot.getLease().release();
+        }
+    }
+
+    private byte[] synthesizeNormalizedSpeech(String text, CoquiTTSVoice voice, String codec,
+            SynthesisContext context, RuntimeSnapshot snapshot) throws TTSException {
         String[] format = getFormatForCodec(codec);
-        String fileNameInCache = getUniqueFilenameForText(text, voice.getTechnicalName());
+        String namespace;
+        String fileNameInCache;
+        try (Trace.Span span = context.span("cache key")) {
+            namespace = getNamespace(snapshot);
+            fileNameInCache = createKey(namespace, text, voice.getTechnicalName());
+            span.setDetail(fileNameInCache);
+        }
         File audioFileInCache = new File(cacheFolder, fileNameInCache + "." + format[1]);
         try {
             // check if in cache
-            if (audioFileInCache.exists()) {
-                logger.debug("Audio file {} was found in cache.", audioFileInCache.getName());
-                return Files.readAllBytes(audioFileInCache.toPath());
+            try (Trace.Span span = context.span("cache lookup")) {
+                if (audioFileInCache.exists()) {
+                    logger.debug("Audio file {} was found in cache.", audioFileInCache.getName());
+                    cacheIndex.touch(fileNameInCache);
+                    byte[] audio = Files.readAllBytes(audioFileInCache.toPath());
+                    statistics.record(SynthesisStatistics.Source.LOCAL_CACHE);
+                    span.setDetail("local");
+                    return audio;
+                }
+                byte[] queued = writeBehind.get(fileNameInCache);
+                if (queued != null) {
+                    logger.debug("Audio file {} was found in the write-behind queue.", audioFileInCache.getName());
+                    statistics.record(SynthesisStatistics.Source.LOCAL_CACHE);
+                    span.setDetail("queued");
+                    return queued;
+                }
+                for (CacheBundle bundle : bundles) {
+                    byte[] audio;
+                    try {
+                        audio = bundle.read(fileNameInCache);
+                    } catch (IOException e) {
+                        logger.debug("Could not read {} from bundle {}: {}", fileNameInCache, bundle.getFile(),
+                                e.getMessage());
+                        continue;
+                    }
+                    if (audio != null) {
+                        logger.debug("Audio file {} was found in bundle {}.", fileNameInCache, bundle.getFile());
+                        statistics.record(SynthesisStatistics.Source.BUNDLE);
+                        span.setDetail("bundle");
+                        return audio;
+                    }
+                }
+                byte[] shared = readSharedCache(text, audioFileInCache, voice.getTechnicalName(), namespace, context);
+                if (shared != null) {
+                    statistics.record(SynthesisStatistics.Source.SHARED_CACHE);
+                    span.setDetail("shared");
+                    return shared;
+                }
+                span.setDetail("miss");
+            }
+
+            // fail fast if the backend rejected this text recently
+            try {
+                negativeCache.check(voice.getTechnicalName(), text);
+            } catch (TTSException e) {
+                statistics.record(SynthesisStatistics.Source.BACKED_OFF);
+                throw e;
+            }
+            lastVoice = voice;
+            if (!isReachable(snapshot, context)) {
+                statistics.record(SynthesisStatistics.Source.FAILED);
+                return null;
             }
 
             // if not in cache, get audio data and put to cache
-            byte[] audio = synthesizeSpeechByCoqui(text, voice, format[0]);
+            byte[] audio = synthesizeSpeechByCoqui(text, voice, format[0], context, snapshot);
 
+            statistics.record(
+                    audio != null ? SynthesisStatistics.Source.BACKEND : SynthesisStatistics.Source.FAILED);
             if (audio != null) {
-                saveAudioAndTextToFile(text, audioFileInCache, audio, voice.getTechnicalName());
+                negativeCache.recordSuccess(voice.getTechnicalName(), text);
+                degraded.recordSuccess();
+                try (Trace.Span span = context.span("cache write")) {
+                    saveAudioAndTextToFile(text, audioFileInCache, audio, voice.getTechnicalName(), namespace);
+                }
+                publishToSharedCache(audioFileInCache.getName(), audio);
             }
             return audio;
         } catch (AuthenticationException | CommunicationException e) {
-            logger.warn("Error initializing Coqui Cloud TTS service: {}", e.getMessage());
-        } catch (FileNotFoundException e) {
-            logger.warn("Could not write file {} to cache: {}", audioFileInCache, e.getMessage());
+            statistics.record(SynthesisStatistics.Source.FAILED);
+            if (Thread.currentThread().isInterrupted() || context.isCancelled()) {
+                // the caller gave up or the deadline expired, that says nothing about the text
+                logger.debug("Synthesis was cancelled: {}", e.getMessage());
+            } else if (e.getCause() instanceof SynthesisRejectedException) {
+                Duration backoff = negativeCache.recordFailure(voice.getTechnicalName(), text, e.getMessage());
+                logger.warn("Coqui backend rejected the text: {}, not retrying it for {} s", e.getMessage(),
+                        backoff.toSeconds());
+            } else {
+                // the text is not to blame, degraded mode answers from the cache until the backend recovers
+                degraded.recordUnreachable();
+                logger.warn("Coqui backend failed to synthesize the text: {}", e.getMessage());
+            }
         } catch (IOException e) {
             logger.debug("An unexpected IOException occurred: {}", e.getMessage());
         }
@@ -211,39 +1274,27 @@ class CoquiAPI {
     }
 
     /**
-     * Create cache entry.
+     * Create cache entry. The entry is queued and written in the background, so slow storage does not delay the
+     * caller; until then it is served from the queue.
      *
      * @param text Converted text.
      * @param cacheFile Cache entry file.
      * @param audio Byte array of the audio.
      * @param voiceName Used voice
-     * @throws FileNotFoundException
-     * @throws IOException in case of file handling exceptions
+     * @param namespace Namespace of the cache key
      */
-    private void saveAudioAndTextToFile(String text, File cacheFile, byte[] audio, String voiceName)
-            throws IOException, FileNotFoundException {
-        logger.debug("Caching audio file {}", cacheFile.getName());
-        try (FileOutputStream audioFileOutputStream = new FileOutputStream(cacheFile)) {
-            audioFileOutputStream.write(audio);
-        }
+    private void saveAudioAndTextToFile(String text, File cacheFile, byte[] audio, String voiceName,
+            String namespace) {
+        String key = removeExtension(cacheFile.getName());
+        writeBehind.submit(key, audio, () -> {
+            logger.debug("Caching audio file {}", cacheFile.getName());
+            cacheWriter.write(key, cacheFile.getName(), audio);
 
-        // write text to file for transparency too
-        // this allows to know which contents is in which audio file
-        String textFileName = removeExtension(cacheFile.getName()) + ".txt";
-        logger.debug("Caching text file {}", textFileName);
-        try (FileOutputStream textFileOutputStream = new FileOutputStream(new File(cacheFolder, textFileName))) {
-            // @formatter:off
-            StringBuilder sb = new StringBuilder("Config: ")
-                    .append(config.toConfigString())
-                    .append(",voice=")
-                    .append(voiceName)
-                    .append(System.lineSeparator())
-                    .append("Text: ")
-                    .append(text)
-                    .append(System.lineSeparator());
-            // @formatter:on
-            textFileOutputStream.write(sb.toString().getBytes(StandardCharsets.UTF_8));
-        }
+            // record text and config in the index for transparency too
+            // this allows to know which contents is in which audio file
+            String extension = cacheFile.getName().substring(key.length() + 1);
+            cacheIndex.put(new CacheIndex.Entry(key, text, voiceName, namespace, extension, audio.length));
+        });
     }
 
     /**
@@ -264,33 +1315,52 @@ class CoquiAPI {
      * @param text Text to synthesize
      * @param voice Voice parameter
      * @param audioFormat Audio encoding format
+     * @param context Lane and deadline of the backend requests
+     * @param snapshot Snapshot holding the client
      * @return Audio input stream or {@code null} when encoding exceptions occur
      * @throws AuthenticationException
      * @throws CommunicationException
      */
     @SuppressWarnings("null")
-    private byte[] synthesizeSpeechByCoqui(String text, CoquiTTSVoice voice, String audioFormat)
-            throws AuthenticationException, CommunicationException {
+    private byte[] synthesizeSpeechByCoqui(String text, CoquiTTSVoice voice, String audioFormat,
+            SynthesisContext context, RuntimeSnapshot snapshot) throws AuthenticationException, CommunicationException {
+        ICoquiTTSClient client = snapshot.getClient();
+        if (client == null) {
+            throw new CommunicationException("The Coqui backend is not configured");
+        }
 
+        Trace.Span span = context.enter("backend");
         try {
-            byte[] synthesizeSpeechResponse = client.synthesize(text, voice);
+            long start = System.nanoTime();
+            byte[] synthesizeSpeechResponse = client.synthesize(text, voice, context);
+            statistics.recordLatency(snapshot.getBackendName(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
             // return Base64.getDecoder().decode(synthesizeSpeechResponse);
             return synthesizeSpeechResponse;
         } catch (IOException e) {
-            throw new CommunicationException(String.format("An unexpected IOException occurred: %s", e.getMessage()));
+            span.setDetail(String.valueOf(e.getMessage()));
+            // keeps the cause, a rejected text is backed off unlike a failing backend
+            throw new CommunicationException(String.format("An unexpected IOException occurred: %s", e.getMessage()),
+                    e);
+        } finally {
+            context.exit(span);
         }
     }
 
     /**
-     * Gets a unique filename for a give text, by creating a MD5 hash of it. It
-     * will be preceded by the locale.
+     * Gets a unique filename for a give text, by creating a MD5 hash of it and the cache namespace. It
+     * will be preceded by the voice.
      * <p>
      * Sample: "en-US_00a2653ac5f77063bc4ea2fee87318d3"
      */
     private String getUniqueFilenameForText(String text, String voiceName) {
+        return createKey(getNamespace(), text, voiceName);
+    }
+
+    private String createKey(String namespace, String text, String voiceName) {
         try {
             MessageDigest md = MessageDigest.getInstance("MD5");
-            byte[] bytesOfMessage = (config.toConfigString() + text).getBytes(StandardCharsets.UTF_8);
+            byte[] bytesOfMessage = (namespace + text).getBytes(StandardCharsets.UTF_8);
             String fileNameHash = String.format("%032x", new BigInteger(1, md.digest(bytesOfMessage)));
             return voiceName + "_" + fileNameHash;
         } catch (NoSuchAlgorithmException e) {
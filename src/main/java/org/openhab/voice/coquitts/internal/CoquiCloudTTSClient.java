@@ -1,26 +1,32 @@
 package org.openhab.voice.coquitts.internal;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.SequenceInputStream;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
-import javax.sound.sampled.AudioFileFormat;
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.UnsupportedAudioFileException;
-
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.jetty.client.api.ContentResponse;
 import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
 import org.eclipse.jetty.client.util.FutureResponseListener;
+import org.eclipse.jetty.client.util.InputStreamResponseListener;
+import org.eclipse.jetty.client.util.StringContentProvider;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
 import org.openhab.core.io.net.http.HttpClientFactory;
 import org.openhab.core.io.net.http.HttpRequestBuilder;
-import org.openhab.core.library.types.RawType;
 import org.openhab.voice.coquitts.internal.dto.CoquiTTSSpeaker;
 import org.openhab.voice.coquitts.internal.dto.CoquiTTSVoice;
 import org.openhab.voice.coquitts.internal.dto.ListVoicesResponse;
@@ -40,17 +46,46 @@ public class CoquiCloudTTSClient implements ICoquiTTSClient {
     // Custom voices created by user
     private static final String voicesEndpoint = "/api/v2/voices";
     private static final String createSampleEndpoint = "/api/v2/samples";
-    private static final String basePath = "https://app.coqui.ai";
+    static final String DEFAULT_BASE_PATH = "https://app.coqui.ai";
 
     private String apiKey;
+    private final String basePath;
     private final Gson gson = new GsonBuilder().create();
     private final Logger logger = LoggerFactory.getLogger(CoquiCloudTTSClient.class);
     private final HttpClientFactory clientFactory;
+    private final SynthesisScheduler scheduler;
+    private final CloudSampleIndex samples;
+
+    /**
+     * Audio of a chunk and the id of the sample it was downloaded from
+     */
+    private static class Chunk {
+        final String sampleId;
+        final WaveUtils.Pcm pcm;
+
+        Chunk(String sampleId, WaveUtils.Pcm pcm) {
+            this.sampleId = sampleId;
+            this.pcm = pcm;
+        }
+    }
+
+    public CoquiCloudTTSClient(String apiKey, HttpClientFactory clientFactory, SynthesisScheduler scheduler,
+            CloudSampleIndex samples) {
+        this(apiKey, DEFAULT_BASE_PATH, clientFactory, scheduler, samples);
+    }
 
-    public CoquiCloudTTSClient(String apiKey, HttpClientFactory clientFactory) {
+    /**
+     * @param basePath URL of the cloud service, e.g. of a stub server or a proxy
+     * @param samples Samples created earlier, downloaded again instead of creating new ones
+     */
+    public CoquiCloudTTSClient(String apiKey, String basePath, HttpClientFactory clientFactory,
+            SynthesisScheduler scheduler, CloudSampleIndex samples) {
         logger.debug("Initializing CoquiCloudTTSClient");
         this.apiKey = apiKey;
+        this.basePath = basePath.endsWith("/") ? basePath.substring(0, basePath.length() - 1) : basePath;
         this.clientFactory = clientFactory;
+        this.scheduler = scheduler;
+        this.samples = samples;
     }
 
     @Override
@@ -100,78 +135,248 @@ public class CoquiCloudTTSClient implements ICoquiTTSClient {
     }
 
     @Override
-    public byte[] synthesize(String text, CoquiTTSVoice voice) throws IOException {
+    public void probe(int timeoutMillis) throws IOException {
+        URI uri = URI.create(basePath);
+        int port = uri.getPort() > 0 ? uri.getPort() : "http".equals(uri.getScheme()) ? 80 : 443;
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(uri.getHost(), port), timeoutMillis);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public String getBackendIdentity() {
+        // models of the cloud service are managed by Coqui, voices are identified by their speaker ids
+        return "coqui-cloud";
+    }
+
+    @Override
+    public byte[] synthesize(String text, CoquiTTSVoice voice, SynthesisContext context) throws IOException {
         try {
-            logger.debug(String.format("Synthesizing text [{}] for voice {}.", text, voice.getLabel()));
-            String[] splits = text.split("(?<!\\w\\.\\w.)(?<![A-Z][a-z]\\.)(?<=\\.|\\?)\\s");
-
-            StringBuilder sb = new StringBuilder();
-            List<AudioInputStream> allClips = new ArrayList<AudioInputStream>();
-            for (int i = 0; i < splits.length; i++) {
-                String s = splits[i];
-                if (s.length() > 500) {
-                    throw new IOException(
-                            "Could not split text of TTS request into sentences of less than 500 characters in length. text: "
-                                    + text);
+            logger.debug("Synthesizing text [{}] for voice {}.", text, voice.getLabel());
+            List<String> texts;
+            try (Trace.Span span = context.span("segmentation")) {
+                String[] splits = text.split("(?<!\\w\\.\\w.)(?<![A-Z][a-z]\\.)(?<=\\.|\\?)\\s");
+                texts = new ArrayList<>();
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < splits.length; i++) {
+                    String s = splits[i];
+                    if (s.length() > 500) {
+                        throw new IOException(
+                                "Could not split text of TTS request into sentences of less than 500 characters in length. text: "
+                                        + text);
+                    }
+
+                    if (sb.length() > 0 && sb.length() + 1 + s.length() > 500) {
+                        texts.add(sb.toString());
+
+                        // reset request
+                        sb = new StringBuilder();
+                        sb.append(s);
+                    } else {
+                        sb.append(sb.length() > 0 ? " " : "").append(s);
+                    }
                 }
+                // Last call for the last sentence or batch of sentences
+                texts.add(sb.toString());
+                span.setDetail(texts.size() + " chunks");
+            }
+
+            // samples of the text are only reused chunk by chunk if it is still split the same way
+            List<String> known = samples.get(voice.getSpeakerId(), text);
+            if (known != null && known.size() != texts.size()) {
+                known = null;
+            }
 
-                if (sb.length() + s.length() >= 500) {
-                    // RawType r = HttpUtil.downloadData(response.getAudio_url(), null, false, -1, 10000);
-                    byte[] b = makeCoquiTTSRequest(sb.toString(), voice).getBytes();
-                    logger.debug("Chunk length: " + b.length);
-                    allClips.add(AudioSystem.getAudioInputStream(new ByteArrayInputStream(b)));
-
-                    // reset request
-                    sb = new StringBuilder();
-                    sb.append(s);
-                } else {
-                    sb.append(s);
+            // Queue all chunks at once, the scheduler decides how many of them run in parallel
+            List<Future<Chunk>> chunks = new ArrayList<>();
+            List<SynthesisContext.Registration> registrations = new ArrayList<>();
+            List<WaveUtils.Pcm> allClips = new ArrayList<>();
+            List<String> ids = new ArrayList<>();
+            try {
+                for (int i = 0; i < texts.size(); i++) {
+                    Future<Chunk> future = submitChunk(texts.get(i), known != null ? known.get(i) : null, voice,
+                            context, context.span("chunk " + (i + 1)));
+                    chunks.add(future);
+                    registrations.add(context.track(future));
+                }
+                for (int i = 0; i < chunks.size(); i++) {
+                    Chunk chunk = context.await(chunks.get(i));
+                    registrations.get(i).close();
+                    logger.debug("Chunk length: {}", chunk.pcm.length);
+                    allClips.add(chunk.pcm);
+                    ids.add(chunk.sampleId);
                 }
+            } finally {
+                // do not leave chunks of a failed request in the queue
+                chunks.forEach(c -> c.cancel(true));
+                registrations.forEach(SynthesisContext.Registration::close);
+            }
+            if (ids.equals(known)) {
+                samples.recordReuse();
+            } else {
+                samples.put(voice.getSpeakerId(), text, ids);
             }
-            // Last call for the last sentence or batch of sentences
-            byte[] b = makeCoquiTTSRequest(sb.toString(), voice).getBytes();
-            logger.debug("Chunk length: " + b.length);
-            allClips.add(AudioSystem.getAudioInputStream(new ByteArrayInputStream(b)));
-
-            // Copy the right bytes out to the return
-            // Get total framelength
-            long totalFrameLength = 0;
-            for (AudioInputStream a : allClips) {
-                totalFrameLength += a.getFrameLength();
+            try (Trace.Span span = context.span("concatenation")) {
+                return WaveUtils.assemble(allClips);
             }
-            AudioInputStream appendedFiles = new AudioInputStream(
-                    new SequenceInputStream(Collections.enumeration(allClips)), allClips.get(0).getFormat(),
-                    totalFrameLength);
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            AudioSystem.write(appendedFiles, AudioFileFormat.Type.WAVE, baos);
-            return baos.toByteArray();
         } catch (IllegalArgumentException e) {
             throw new IOException(e);
-        } catch (UnsupportedAudioFileException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Queues a chunk request. The span of the chunk starts when it is queued and ends when its audio is read or the
+     * request failed.
+     */
+    private Future<Chunk> submitChunk(String text, @Nullable String sampleId, CoquiTTSVoice voice,
+            SynthesisContext context, Trace.Span span) throws IOException {
+        span.setDetail(text.length() + " chars");
+        try {
+            context.checkActive();
+            return scheduler.submit(context.getLane(), () -> {
+                try {
+                    return makeCoquiTTSRequest(text, sampleId, voice, context, span);
+                } finally {
+                    span.close();
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            span.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Downloads the audio of the sample created for the chunk earlier, or creates a new sample and downloads its
+     * audio. Only the PCM data is kept, copied through a pooled buffer, so the audio of a chunk is held in memory once.
+     *
+     * @param sampleId Id of the sample created for the chunk earlier, {@code null} if none is known
+     */
+    private Chunk makeCoquiTTSRequest(String text, @Nullable String sampleId, CoquiTTSVoice voice,
+            SynthesisContext context, Trace.Span span) throws IOException {
+        context.checkActive();
+        if (sampleId != null) {
+            try {
+                return new Chunk(sampleId, reuseSample(sampleId, context, span));
+            } catch (IOException e) {
+                // a cancelled request does not tell whether the sample still exists
+                context.checkActive();
+                logger.debug("Could not download sample {} again, creating a new one: {}", sampleId, e.getMessage());
+            }
+        }
+
+        String url = basePath + createSampleEndpoint;
+        // make request and add to bytebuffer
+        VoiceDataRequest req = new VoiceDataRequest(voice.getSpeakerId(), "Neutral", "Created by Openhab", text, 1.0);
+        Request post = clientFactory.getCommonHttpClient().newRequest(url).method(HttpMethod.POST)
+                .content(new StringContentProvider("application/json", gson.toJson(req), StandardCharsets.UTF_8));
+
+        VoiceDataResponse response;
+        try (Trace.Span postSpan = span.child("POST")) {
+            response = requestSample(post, context);
+        }
+        return new Chunk(response.getId(), download(response.getAudio_url(), context, span));
+    }
+
+    /**
+     * Looks up a sample created earlier and downloads its audio again. Audio URLs may expire, so the sample is
+     * requested first to get its current URL.
+     */
+    private WaveUtils.Pcm reuseSample(String sampleId, SynthesisContext context, Trace.Span span)
+            throws IOException {
+        Request get = clientFactory.getCommonHttpClient().newRequest(basePath + createSampleEndpoint + "/" + sampleId)
+                .method(HttpMethod.GET);
+        VoiceDataResponse response;
+        try (Trace.Span getSpan = span.child("GET sample")) {
+            getSpan.setDetail(sampleId);
+            response = requestSample(get, context);
+        }
+        return download(response.getAudio_url(), context, span);
+    }
+
+    /**
+     * Sends a sample request and parses the sample it returns. The request is aborted if the synthesis is cancelled.
+     * Only a status refusing the text is reported as rejection. Authentication errors, rate limits and other failures
+     * of the service say nothing about the text.
+     *
+     * @throws SynthesisRejectedException if the service refused the text
+     * @throws IOException if the request failed or did not return a sample
+     */
+    private VoiceDataResponse requestSample(Request request, SynthesisContext context) throws IOException {
+        FutureResponseListener listener = new FutureResponseListener(request);
+        ContentResponse response;
+        try (SynthesisContext.Registration abort = context
+                .onCancel(() -> request.abort(new InterruptedIOException("Synthesis was cancelled")))) {
+            request.header(HttpHeader.AUTHORIZATION, "Bearer " + apiKey)
+                    .timeout(context.getRemainingMillis(), TimeUnit.MILLISECONDS).send(listener);
+            response = listener.get();
+        } catch (InterruptedException e) {
+            request.abort(e);
+            Thread.currentThread().interrupt();
             throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+        String content = response.getContentAsString();
+        int status = response.getStatus();
+        if (SynthesisRejectedException.isRejection(status)) {
+            throw new SynthesisRejectedException("Coqui cloud refused the text with status " + status + ": " + content);
+        }
+        if (!HttpStatus.isSuccess(status)) {
+            throw new IOException("Coqui cloud returned status " + status + ": " + content);
+        }
+        try {
+            VoiceDataResponse sample = gson.fromJson(content, VoiceDataResponse.class);
+            if (sample == null || sample.getId() == null || sample.getAudio_url() == null) {
+                throw new IOException("Unexpected sample response: " + content);
+            }
+            return sample;
+        } catch (JsonSyntaxException e) {
+            throw new IOException("Unexpected sample response: " + content);
         }
     }
 
-    private RawType makeCoquiTTSRequest(String text, CoquiTTSVoice voice) throws IOException {
+    /**
+     * Streams the audio of a sample.
+     */
+    private WaveUtils.Pcm download(String audioUrl, SynthesisContext context, Trace.Span span) throws IOException {
+        Request dataRequest = null;
         try {
-            String url = basePath + createSampleEndpoint;
-            // make request and add to bytebuffer
-            VoiceDataRequest req = new VoiceDataRequest(voice.getSpeakerId(), "Neutral", "Created by Openhab", text,
-                    1.0);
-            HttpRequestBuilder builder = HttpRequestBuilder.postTo(url).withHeader("Authorization", "Bearer " + apiKey)
-                    .withContent(gson.toJson(req), "application/json");
-
-            VoiceDataResponse response = gson.fromJson(builder.getContentAsString(), VoiceDataResponse.class);
-            logger.debug("Downloading audio file result from Coqui AI Response: " + response.getAudio_url());
-            Request dataRequest = clientFactory.getCommonHttpClient().newRequest(response.getAudio_url()).timeout(10000,
-                    TimeUnit.MILLISECONDS);
-            FutureResponseListener listener = new FutureResponseListener(dataRequest, 20000 * 1024);
-            dataRequest.send(listener);
-            RawType r = new RawType(listener.get().getContent(), RawType.DEFAULT_MIME_TYPE);
-            return r;
-        } catch (InterruptedException | ExecutionException | IllegalArgumentException e) {
+            logger.debug("Downloading audio file result from Coqui AI Response: " + audioUrl);
+            context.checkActive();
+            Trace.Span downloadSpan = span.child("download");
+            Request download = clientFactory.getCommonHttpClient().newRequest(audioUrl)
+                    .timeout(context.getRemainingMillis(), TimeUnit.MILLISECONDS);
+            dataRequest = download;
+            InputStreamResponseListener listener = new InputStreamResponseListener();
+            try (SynthesisContext.Registration abort = context
+                    .onCancel(() -> download.abort(new InterruptedIOException("Synthesis was cancelled")))) {
+                download.send(listener);
+                Response dataResponse = listener.get(context.getRemainingMillis(), TimeUnit.MILLISECONDS);
+                if (dataResponse.getStatus() != HttpStatus.OK_200) {
+                    download.abort(new IOException("Unexpected status " + dataResponse.getStatus()));
+                    throw new IOException("Downloading audio failed with status " + dataResponse.getStatus());
+                }
+                long contentLength = dataResponse.getHeaders().getLongField(HttpHeader.CONTENT_LENGTH.asString());
+                try (InputStream in = listener.getInputStream()) {
+                    WaveUtils.Pcm pcm = WaveUtils.readPcm(in, contentLength);
+                    downloadSpan.setDetail(pcm.length + " bytes");
+                    downloadSpan.close();
+                    return pcm;
+                }
+            }
+        } catch (InterruptedException e) {
+            if (dataRequest != null) {
+                dataRequest.abort(e);
+            }
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException | TimeoutException | IllegalArgumentException e) {
+            if (dataRequest != null) {
+                dataRequest.abort(e);
+            }
             throw new IOException(e);
         }
     }
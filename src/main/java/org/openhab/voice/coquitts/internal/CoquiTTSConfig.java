@@ -12,7 +12,11 @@
  */
 package org.openhab.voice.coquitts.internal;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
@@ -40,6 +44,92 @@ class CoquiTTSConfig {
      */
     public Boolean purgeCache = Boolean.FALSE;
 
+    /**
+     * Maximum number of concurrent backend requests, over all lanes and per lane.
+     */
+    public Integer maxConcurrentRequests = 2;
+    public Integer interactiveConcurrency = 2;
+    public Integer backgroundConcurrency = 1;
+
+    /**
+     * Threads used for backend requests, either "platform" or "virtual".
+     */
+    public String executionMode = "platform";
+
+    /**
+     * Normalize texts before caching and synthesis, optionally spelling out numbers and units.
+     */
+    public Boolean normalizeText = Boolean.FALSE;
+    public Boolean spellOutNumbers = Boolean.FALSE;
+
+    /**
+     * Announcement templates composed from cached fragments, and slot values to pre-render.
+     */
+    public List<String> announcementTemplates = List.of();
+    public List<String> templateSlotLibrary = List.of();
+
+    /**
+     * Cache bundles served read-only after the local cache.
+     */
+    public List<String> cacheBundles = List.of();
+
+    /**
+     * Second-level cache shared with other instances: type "none", "directory" or "http", and its location.
+     */
+    public String sharedCacheType = "none";
+    public @Nullable String sharedCacheLocation;
+
+    /**
+     * URL of the cloud service.
+     */
+    public String cloudUrl = CoquiCloudTTSClient.DEFAULT_BASE_PATH;
+
+    /**
+     * Default deadline of a synthesis in seconds, including queueing and all chunk requests.
+     */
+    static final int DEFAULT_REQUEST_TIMEOUT = 30;
+    public Integer requestTimeout = DEFAULT_REQUEST_TIMEOUT;
+
+    /**
+     * Interval of the keep-warm probes in seconds, 0 disables them.
+     */
+    public Integer keepWarmInterval = 0;
+
+    /**
+     * Namespace of the cache keys, the identity reported by the backend is used if not set.
+     */
+    public @Nullable String cacheNamespace;
+
+    /**
+     * Number of most played texts re-rendered after the backend or the voices changed, and the maximum number of
+     * characters synthesized for them.
+     */
+    public Integer rewarmTopTexts = 20;
+    public Integer rewarmCharacterBudget = 2000;
+
+    /**
+     * Announcements like "GarageDoor=The garage door is {state}" rendered when the state of their item changes, and
+     * the maximum number of these renders per minute.
+     */
+    public List<String> itemAnnouncements = List.of();
+    public Integer itemAnnouncementRate = 30;
+
+    /**
+     * Answer announcements from stale cache entries or fallback clips like "<voice>=<file>" while the backend is
+     * unavailable, probing it with the given connection timeout in milliseconds.
+     */
+    public Boolean degradedMode = Boolean.FALSE;
+    public Integer degradedProbeTimeout = 1000;
+    public List<String> fallbackClips = List.of();
+
+    /**
+     * Record a trace of every synthesis, dump traces slower than the threshold in milliseconds to the log or, if set,
+     * to a JSON lines file.
+     */
+    public Boolean traceRequests = Boolean.FALSE;
+    public Integer slowTraceThreshold = 3000;
+    public @Nullable String traceFile;
+
     private final Logger logger = LoggerFactory.getLogger(CoquiTTSConfig.class);
 
     private static final String SCHEME_NAME = "scheme";
@@ -48,14 +138,44 @@ class CoquiTTSConfig {
     private static final String PURGE_CACHE_NAME = "purgeCache";
     private static final String IS_CLOUD_ACCOUNT_NAME = "isCloudAccount";
     private static final String API_KEY_NAME = "apiKey";
+    private static final String MAX_CONCURRENT_REQUESTS_NAME = "maxConcurrentRequests";
+    private static final String INTERACTIVE_CONCURRENCY_NAME = "interactiveConcurrency";
+    private static final String BACKGROUND_CONCURRENCY_NAME = "backgroundConcurrency";
+    private static final String EXECUTION_MODE_NAME = "executionMode";
+    private static final String NORMALIZE_TEXT_NAME = "normalizeText";
+    private static final String SPELL_OUT_NUMBERS_NAME = "spellOutNumbers";
+    private static final String ANNOUNCEMENT_TEMPLATES_NAME = "announcementTemplates";
+    private static final String TEMPLATE_SLOT_LIBRARY_NAME = "templateSlotLibrary";
+    private static final String CACHE_BUNDLES_NAME = "cacheBundles";
+    private static final String SHARED_CACHE_TYPE_NAME = "sharedCacheType";
+    private static final String SHARED_CACHE_LOCATION_NAME = "sharedCacheLocation";
+    private static final String CACHE_NAMESPACE_NAME = "cacheNamespace";
+    private static final String KEEP_WARM_INTERVAL_NAME = "keepWarmInterval";
+    private static final String REQUEST_TIMEOUT_NAME = "requestTimeout";
+    private static final String CLOUD_URL_NAME = "cloudUrl";
+    private static final String REWARM_TOP_TEXTS_NAME = "rewarmTopTexts";
+    private static final String REWARM_CHARACTER_BUDGET_NAME = "rewarmCharacterBudget";
+    private static final String ITEM_ANNOUNCEMENTS_NAME = "itemAnnouncements";
+    private static final String ITEM_ANNOUNCEMENT_RATE_NAME = "itemAnnouncementRate";
+    private static final String DEGRADED_MODE_NAME = "degradedMode";
+    private static final String DEGRADED_PROBE_TIMEOUT_NAME = "degradedProbeTimeout";
+    private static final String FALLBACK_CLIPS_NAME = "fallbackClips";
+    private static final String TRACE_REQUESTS_NAME = "traceRequests";
+    private static final String SLOW_TRACE_THRESHOLD_NAME = "slowTraceThreshold";
+    private static final String TRACE_FILE_NAME = "traceFile";
 
     @Override
     public String toString() {
         return "CoquiTTSConfig{hostname=" + hostname + ", port=" + port + ", purgeCache=" + purgeCache + '}';
     }
 
+    /**
+     * Prefix of the configuration recorded with cache entries of earlier versions
+     */
+    static final String LEGACY_CONFIG_PREFIX = "hostname=";
+
     String toConfigString() {
-        return String.format("hostname=%s,port=%d", hostname, port);
+        return String.format(LEGACY_CONFIG_PREFIX + "%s,port=%d", hostname, port);
     }
 
     @SuppressWarnings("null")
@@ -63,6 +183,20 @@ class CoquiTTSConfig {
         return config.containsKey(param) ? config.get(param).toString() : null;
     }
 
+    /**
+     * Reads a multi-value parameter, given either as collection or as newline separated text.
+     */
+    private static @Nullable List<String> getListOrNull(Map<String, Object> config, String param) {
+        Object value = config.get(param);
+        if (value == null) {
+            return null;
+        }
+        Collection<?> values = value instanceof Collection ? (Collection<?>) value
+                : Arrays.asList(value.toString().split("\\R"));
+        return values.stream().map(Object::toString).map(String::trim).filter(v -> !v.isEmpty())
+                .collect(Collectors.toList());
+    }
+
     public void updateConfig(Map<String, Object> newConfig) {
         String param = null;
         logger.debug("Configuration update request received");
@@ -81,6 +215,10 @@ class CoquiTTSConfig {
         if (param != null) {
             apiKey = param;
         }
+        param = getOrNull(newConfig, CLOUD_URL_NAME);
+        if (param != null && !param.isBlank()) {
+            cloudUrl = param.trim();
+        }
         param = getOrNull(newConfig, IS_CLOUD_ACCOUNT_NAME);
         if (param != null) {
             isCloudAccount = Boolean.parseBoolean(param);
@@ -96,5 +234,121 @@ class CoquiTTSConfig {
         if (param != null) {
             purgeCache = Boolean.parseBoolean(param);
         }
+
+        // concurrency limits
+        param = getOrNull(newConfig, MAX_CONCURRENT_REQUESTS_NAME);
+        if (param != null) {
+            maxConcurrentRequests = Integer.parseInt(param);
+        }
+        param = getOrNull(newConfig, INTERACTIVE_CONCURRENCY_NAME);
+        if (param != null) {
+            interactiveConcurrency = Integer.parseInt(param);
+        }
+        param = getOrNull(newConfig, BACKGROUND_CONCURRENCY_NAME);
+        if (param != null) {
+            backgroundConcurrency = Integer.parseInt(param);
+        }
+        param = getOrNull(newConfig, EXECUTION_MODE_NAME);
+        if (param != null) {
+            executionMode = param;
+        }
+        param = getOrNull(newConfig, REQUEST_TIMEOUT_NAME);
+        if (param != null) {
+            requestTimeout = Integer.parseInt(param);
+        }
+        param = getOrNull(newConfig, KEEP_WARM_INTERVAL_NAME);
+        if (param != null) {
+            keepWarmInterval = Integer.parseInt(param);
+        }
+
+        // text normalization
+        param = getOrNull(newConfig, NORMALIZE_TEXT_NAME);
+        if (param != null) {
+            normalizeText = Boolean.parseBoolean(param);
+        }
+        param = getOrNull(newConfig, SPELL_OUT_NUMBERS_NAME);
+        if (param != null) {
+            spellOutNumbers = Boolean.parseBoolean(param);
+        }
+
+        // announcement templates
+        List<String> list = getListOrNull(newConfig, ANNOUNCEMENT_TEMPLATES_NAME);
+        if (list != null) {
+            announcementTemplates = list;
+        }
+        list = getListOrNull(newConfig, TEMPLATE_SLOT_LIBRARY_NAME);
+        if (list != null) {
+            templateSlotLibrary = list;
+        }
+
+        // cache bundles
+        list = getListOrNull(newConfig, CACHE_BUNDLES_NAME);
+        if (list != null) {
+            cacheBundles = list;
+        }
+
+        // shared cache
+        param = getOrNull(newConfig, SHARED_CACHE_TYPE_NAME);
+        if (param != null) {
+            sharedCacheType = param;
+        }
+        param = getOrNull(newConfig, SHARED_CACHE_LOCATION_NAME);
+        if (param != null) {
+            sharedCacheLocation = param.isBlank() ? null : param.trim();
+        }
+
+        // cache namespace
+        param = getOrNull(newConfig, CACHE_NAMESPACE_NAME);
+        if (param != null) {
+            cacheNamespace = param.isBlank() ? null : param.trim();
+        }
+
+        // re-rendering of popular texts
+        param = getOrNull(newConfig, REWARM_TOP_TEXTS_NAME);
+        if (param != null) {
+            rewarmTopTexts = Integer.parseInt(param);
+        }
+        param = getOrNull(newConfig, REWARM_CHARACTER_BUDGET_NAME);
+        if (param != null) {
+            rewarmCharacterBudget = Integer.parseInt(param);
+        }
+
+        // announcements bound to items
+        list = getListOrNull(newConfig, ITEM_ANNOUNCEMENTS_NAME);
+        if (list != null) {
+            itemAnnouncements = list;
+        }
+        param = getOrNull(newConfig, ITEM_ANNOUNCEMENT_RATE_NAME);
+        if (param != null) {
+            itemAnnouncementRate = Integer.parseInt(param);
+        }
+
+        // degraded mode
+        param = getOrNull(newConfig, DEGRADED_MODE_NAME);
+        if (param != null) {
+            degradedMode = Boolean.parseBoolean(param);
+        }
+        param = getOrNull(newConfig, DEGRADED_PROBE_TIMEOUT_NAME);
+        if (param != null) {
+            degradedProbeTimeout = Integer.parseInt(param);
+        }
+        list = getListOrNull(newConfig, FALLBACK_CLIPS_NAME);
+        if (list != null) {
+            fallbackClips = list;
+        }
+
+        // tracing
+        param = getOrNull(newConfig, TRACE_REQUESTS_NAME);
+        if (param != null) {
+            traceRequests = Boolean.parseBoolean(param);
+        }
+        param = getOrNull(newConfig, SLOW_TRACE_THRESHOLD_NAME);
+        if (param != null) {
+            slowTraceThreshold = Integer.parseInt(param);
+        }
+        param = getOrNull(newConfig, TRACE_FILE_NAME);
+        if (param != null) {
+            traceFile = param.isBlank() ? null : param.trim();
+        }
     }
 }
@@ -0,0 +1,254 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.io.console.Console;
+import org.openhab.core.io.console.extensions.AbstractConsoleCommandExtension;
+import org.openhab.core.io.console.extensions.ConsoleCommandExtension;
+import org.openhab.core.voice.TTSService;
+import org.osgi.framework.Constants;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+/**
+ * Console commands of the Coqui TTS service.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+@Component(service = ConsoleCommandExtension.class)
+public class CoquiTTSConsoleCommandExtension extends AbstractConsoleCommandExtension {
+
+    private static final String SUBCMD_CACHE = "cache";
+    private static final String SUBCMD_HEALTH = "health";
+    private static final String SUBCMD_BULK = "bulk";
+    private static final String SUBCMD_STATS = "stats";
+    private static final String SUBCMD_TRACES = "traces";
+    private static final String SUBCMD_REWARM = "rewarm";
+    private static final String CACHE_LIST = "list";
+    private static final String CACHE_EXPORT = "export";
+    private static final String CACHE_IMPORT = "import";
+    private static final String CACHE_EVICT = "evict";
+    private static final String EVICT_VOICE = "voice";
+    private static final String EVICT_TEXT = "text";
+
+    private static final int DEFAULT_BULK_PARALLELISM = 4;
+    private static final int DEFAULT_TOP_ENTRIES = 10;
+    private static final int DEFAULT_TRACES = 5;
+
+    private final CoquiTTSService service;
+
+    @Activate
+    public CoquiTTSConsoleCommandExtension(
+            final @Reference(target = "(" + Constants.SERVICE_PID + "=" + CoquiTTSService.SERVICE_PID
+                    + ")") TTSService service) {
+        super(CoquiTTSService.SERVICE_ID, "Interact with the Coqui text-to-speech service.");
+        this.service = (CoquiTTSService) service;
+    }
+
+    @Override
+    public void execute(String[] args, Console console) {
+        if (args.length == 0) {
+            printUsage(console);
+            return;
+        }
+        try {
+            switch (args[0]) {
+                case SUBCMD_CACHE:
+                    cache(args, console);
+                    break;
+                case SUBCMD_BULK:
+                    if (args.length < 2) {
+                        printUsage(console);
+                    } else {
+                        bulk(new File(args[1]),
+                                args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_BULK_PARALLELISM, console);
+                    }
+                    break;
+                case SUBCMD_STATS:
+                    stats(args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_TOP_ENTRIES, console);
+                    break;
+                case SUBCMD_HEALTH:
+                    console.println(service.getApi().getKeepWarm().getHealth());
+                    break;
+                case SUBCMD_REWARM:
+                    console.println("Last run: " + service.getApi().getRewarm().getLastRun());
+                    service.getApi().getRewarm().trigger("requested from the console");
+                    console.println("Re-rendering the most played texts in the background");
+                    break;
+                case SUBCMD_TRACES:
+                    traces(args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_TRACES, console);
+                    break;
+                default:
+                    printUsage(console);
+                    break;
+            }
+        } catch (NumberFormatException e) {
+            console.println("Invalid number: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public List<String> getUsages() {
+        return List.of(
+                buildCommandUsage(SUBCMD_BULK + " <file> [<parallelism>]",
+                        "renders the '<voice> | <text>' lines of a file into the cache, skipping cached texts"),
+                buildCommandUsage(SUBCMD_STATS + " [<top>]",
+                        "shows cache, hit ratio, in-flight requests, backend latency and the most played texts"),
+                buildCommandUsage(SUBCMD_HEALTH, "shows the latency of the keep-warm probes"),
+                buildCommandUsage(SUBCMD_REWARM,
+                        "re-renders the most played texts that are not cached under the current backend and voices"),
+                buildCommandUsage(SUBCMD_TRACES + " [<count>]",
+                        "shows the step timelines of the most recent announcements, if tracing is enabled"),
+                buildCommandUsage(SUBCMD_CACHE + " " + CACHE_LIST + " [<text>]",
+                        "lists the cache entries, optionally only those whose text contains the given text"),
+                buildCommandUsage(SUBCMD_CACHE + " " + CACHE_EXPORT + " <file>",
+                        "exports the cache into a bundle file for other installations"),
+                buildCommandUsage(SUBCMD_CACHE + " " + CACHE_IMPORT + " <file>",
+                        "copies the entries of a bundle file into the cache"),
+                buildCommandUsage(SUBCMD_CACHE + " " + CACHE_EVICT + " " + EVICT_VOICE + "|" + EVICT_TEXT + " <regex>",
+                        "removes the cache entries whose voice or text matches the regular expression"));
+    }
+
+    private void cache(String[] args, Console console) {
+        String action = args.length > 1 ? args[1] : "";
+        try {
+            if (CACHE_LIST.equals(action)) {
+                listCache(args.length > 2 ? args[2] : "", console);
+            } else if (CACHE_EXPORT.equals(action) && args.length > 2) {
+                int count = service.getApi().exportCache(new File(args[2]));
+                console.println("Exported " + count + " entries to " + args[2]);
+            } else if (CACHE_EVICT.equals(action) && args.length > 3) {
+                evict(args[2], args[3], console);
+            } else if (CACHE_IMPORT.equals(action) && args.length > 2) {
+                int count = service.getApi().importCache(new File(args[2]));
+                console.println("Imported " + count + " entries from " + args[2]);
+            } else {
+                printUsage(console);
+            }
+        } catch (IOException e) {
+            console.println("Failed: " + e.getMessage());
+        }
+    }
+
+    private void listCache(String text, Console console) {
+        CacheIndex index = service.getApi().getCacheIndex();
+        String filter = text.toLowerCase(Locale.ROOT);
+        List<CacheIndex.Entry> entries = index.list(e -> {
+            String entryText = e.getText();
+            return filter.isEmpty() || (entryText != null && entryText.toLowerCase(Locale.ROOT).contains(filter));
+        });
+        entries.forEach(e -> console.println(e.toString()));
+        console.println(String.format("%d of %d entries, %d bytes in total", entries.size(), index.size(),
+                index.totalBytes()));
+    }
+
+    private void evict(String field, String regex, Console console) {
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
+        } catch (PatternSyntaxException e) {
+            console.println("Invalid regular expression: " + e.getMessage());
+            return;
+        }
+        Predicate<CacheIndex.Entry> filter;
+        if (EVICT_VOICE.equals(field)) {
+            filter = e -> matches(pattern, e.getVoice());
+        } else if (EVICT_TEXT.equals(field)) {
+            filter = e -> matches(pattern, e.getText());
+        } else {
+            printUsage(console);
+            return;
+        }
+        console.println("Evicted " + service.getApi().evict(filter) + " entries");
+    }
+
+    private static boolean matches(Pattern pattern, @Nullable String value) {
+        return value != null && pattern.matcher(value).find();
+    }
+
+    private void stats(int top, Console console) {
+        CoquiAPI api = service.getApi();
+        CacheIndex index = api.getCacheIndex();
+        SynthesisStatistics statistics = api.getStatistics();
+        SynthesisScheduler scheduler = api.getScheduler();
+        console.println(String.format("Cache: %d entries, %d bytes", index.size(), index.totalBytes()));
+        StringBuilder served = new StringBuilder("Served:");
+        for (SynthesisStatistics.Source source : SynthesisStatistics.Source.values()) {
+            served.append(' ').append(source.name().toLowerCase(Locale.ROOT)).append('=')
+                    .append(statistics.getCount(source));
+        }
+        console.println(served.toString());
+        console.println(String.format("Hit ratio: %.1f %%", statistics.getHitRatio() * 100));
+        for (SynthesisScheduler.Lane lane : SynthesisScheduler.Lane.values()) {
+            console.println(String.format("In flight %s: %d running, %d queued", lane.name().toLowerCase(Locale.ROOT),
+                    scheduler.getActiveCount(lane), scheduler.getQueueDepth(lane)));
+        }
+        Map<String, String> latencies = statistics.getLatencies();
+        if (latencies.isEmpty()) {
+            console.println("Latency: no backend requests yet");
+        }
+        latencies.forEach((backend, latency) -> console.println("Latency " + backend + ": " + latency));
+        console.println("Degraded responses: " + api.getDegradedMode().getStatistics());
+        console.println("Cloud samples: " + api.getCloudSamples().getStatistics());
+        console.println("Item announcements: " + service.getItemAnnouncements().getStatistics());
+        console.println("Breaker: " + api.getDegradedMode().getBreakerState());
+        console.println("Backed-off texts: " + api.getNegativeCache().size() + " voice and text combinations");
+        console.println("Most played:");
+        for (CacheIndex.Entry entry : index.mostPlayed(top)) {
+            console.println(String.format("%6d  %s  \"%s\"", entry.getPlays(), entry.getVoice(), entry.getText()));
+        }
+    }
+
+    private void traces(int count, Console console) {
+        TraceRecorder traces = service.getApi().getTraces();
+        if (!traces.isEnabled()) {
+            console.println("Tracing is disabled, enable Trace Requests in the service configuration.");
+            return;
+        }
+        List<Trace> recent = traces.getRecent(count);
+        if (recent.isEmpty()) {
+            console.println("No traces recorded yet");
+        }
+        recent.forEach(t -> console.print(t.toString()));
+    }
+
+    private void bulk(File file, int parallelism, Console console) {
+        BulkSynthesis bulk = new BulkSynthesis(service.getApi(), service.getAvailableVoices(), parallelism);
+        try {
+            List<String> errors = new ArrayList<>();
+            List<BulkSynthesis.Item> items = bulk.parse(file, errors);
+            errors.forEach(console::println);
+            console.println("Rendering " + items.size() + " items with parallelism " + parallelism + "...");
+            bulk.run(items).forEach(console::println);
+        } catch (IOException e) {
+            console.println("Could not read " + file + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            console.println("Interrupted");
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import java.util.Set;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openhab.core.events.Event;
+import org.openhab.core.events.EventSubscriber;
+import org.openhab.core.items.events.ItemStateChangedEvent;
+import org.openhab.core.voice.TTSService;
+import org.osgi.framework.Constants;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+/**
+ * Passes item state changes to the service, which renders the announcements bound to the items ahead of the rules
+ * announcing them.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+@Component(service = EventSubscriber.class)
+public class CoquiTTSEventSubscriber implements EventSubscriber {
+
+    private final CoquiTTSService service;
+
+    @Activate
+    public CoquiTTSEventSubscriber(final @Reference(target = "(" + Constants.SERVICE_PID + "="
+            + CoquiTTSService.SERVICE_PID + ")") TTSService service) {
+        this.service = (CoquiTTSService) service;
+    }
+
+    @Override
+    public Set<String> getSubscribedEventTypes() {
+        return Set.of(ItemStateChangedEvent.TYPE);
+    }
+
+    @Override
+    public void receive(Event event) {
+        if (event instanceof ItemStateChangedEvent) {
+            ItemStateChangedEvent changed = (ItemStateChangedEvent) event;
+            service.itemStateChanged(changed.getItemName(), changed.getItemState().toString(),
+                    changed.getOldItemState().toString());
+        }
+    }
+}
@@ -18,9 +18,7 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.List;
+import java.time.Duration;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
@@ -33,12 +31,12 @@ import org.openhab.core.audio.AudioStream;
 import org.openhab.core.audio.ByteArrayAudioStream;
 import org.openhab.core.audio.utils.AudioWaveUtils;
 import org.openhab.core.auth.client.oauth2.OAuthFactory;
+import org.openhab.core.common.ThreadPoolManager;
 import org.openhab.core.config.core.ConfigurableService;
 import org.openhab.core.io.net.http.HttpClientFactory;
 import org.openhab.core.voice.TTSException;
 import org.openhab.core.voice.TTSService;
 import org.openhab.core.voice.Voice;
-import org.openhab.voice.coquitts.internal.dto.AudioEncoding;
 import org.openhab.voice.coquitts.internal.dto.CoquiTTSVoice;
 import org.osgi.framework.Constants;
 import org.osgi.service.cm.ConfigurationAdmin;
@@ -90,22 +88,22 @@ public class CoquiTTSService implements TTSService {
     private final Logger logger = LoggerFactory.getLogger(CoquiTTSService.class);
 
     /**
-     * Set of supported audio formats
+     * Coqui Cloud TTS API implementation
      */
-    private Set<AudioFormat> audioFormats = new HashSet<>();
+    private @NonNullByDefault({}) CoquiAPI apiImpl;
 
     /**
-     * Coqui Cloud TTS API implementation
+     * Composes templated announcements from cached fragments
      */
-    private @NonNullByDefault({}) CoquiAPI apiImpl;
-    private final ConfigurationAdmin configAdmin;
-    private final OAuthFactory oAuthFactory;
-    private final HttpClientFactory clientFactory;
+    private @NonNullByDefault({}) AnnouncementComposer composer;
 
     /**
-     * All voices for all supported locales
+     * Renders announcements bound to items when their state changes
      */
-    private Set<Voice> allVoices = new HashSet<>();
+    private @NonNullByDefault({}) ItemAnnouncements itemAnnouncements;
+    private final ConfigurationAdmin configAdmin;
+    private final OAuthFactory oAuthFactory;
+    private final HttpClientFactory clientFactory;
 
     private final CoquiTTSConfig config = new CoquiTTSConfig();
 
@@ -128,56 +126,54 @@ public class CoquiTTSService implements TTSService {
         // create cache folder
         File userData = new File(OpenHAB.getUserDataFolder());
         File cacheFolder = new File(new File(userData, CACHE_FOLDER_NAME), SERVICE_PID);
+        initialize(config, cacheFolder, new File(userData, SERVICE_ID));
+    }
+
+    /**
+     * Creates the API in the given folders and applies the configuration.
+     *
+     * @param config Configuration
+     * @param cacheFolder Cache folder
+     * @param dataFolder Folder of data that must survive purging the cache
+     */
+    void initialize(Map<String, Object> config, File cacheFolder, File dataFolder) {
         if (!cacheFolder.exists()) {
             logger.debug("Cache folder not found... making...");
             cacheFolder.mkdirs();
         }
         logger.debug("Using cache folder {}", cacheFolder.getAbsolutePath());
 
-        apiImpl = new CoquiAPI(configAdmin, cacheFolder, clientFactory);
+        apiImpl = new CoquiAPI(configAdmin, cacheFolder, dataFolder, clientFactory);
+        composer = new AnnouncementComposer(apiImpl, ThreadPoolManager.getPool(SERVICE_ID));
+        itemAnnouncements = new ItemAnnouncements(ThreadPoolManager.getPool(SERVICE_ID),
+                new ItemAnnouncements.Renderer() {
+                    @Override
+                    public boolean isCached(String text, CoquiTTSVoice voice) {
+                        return apiImpl.isCached(text, voice, AudioFormat.CODEC_PCM_SIGNED);
+                    }
+
+                    @Override
+                    public void render(String text, CoquiTTSVoice voice) throws TTSException {
+                        prerender(text, voice);
+                    }
+                }, () -> apiImpl.getRuntime().getVoices(), apiImpl::getLastVoice);
         updateConfig(config);
     }
 
     @Deactivate
     protected void dispose() {
         logger.debug("Beginning dispose");
-        audioFormats = new HashSet<AudioFormat>();
-        allVoices = new HashSet<Voice>();
-    }
-
-    private Set<AudioFormat> initAudioFormats() {
-        logger.debug("Initializing audio formats");
-        Set<AudioFormat> result = new HashSet<>();
-        for (String format : apiImpl.getSupportedAudioFormats()) {
-            AudioFormat audioFormat = getAudioFormat(format);
-            if (audioFormat != null) {
-                result.add(audioFormat);
-                logger.trace("Audio format supported: {}", format);
-            } else {
-                logger.trace("Audio format not supported: {}", format);
-            }
+        // no further background renders are started, the backend requests of running ones are cancelled below
+        if (itemAnnouncements != null) {
+            itemAnnouncements.stop();
         }
-        return Collections.unmodifiableSet(result);
-    }
-
-    /**
-     * Loads available voices from Coqui API
-     *
-     * @return Set of available voices.
-     */
-    private Set<Voice> initVoices() {
-        logger.trace("Initializing voices");
-        List<CoquiTTSVoice> result = apiImpl.listVoices();
-        if (result.size() == 0) {
-            result.add(new CoquiTTSVoice(new Locale("Undefined"), "Default Voice", CoquiAPI.DEFAULT_LANGUAGE_ID,
-                    CoquiAPI.DEFAULT_VOICE_ID));
+        if (composer != null) {
+            composer.stop();
         }
-        if (logger.isTraceEnabled()) {
-            for (Voice voice : result) {
-                logger.trace("Coqui Cloud TTS voice: {}", voice.getLabel());
-            }
+        if (apiImpl != null) {
+            // running syntheses finish on the voices and client they started with
+            apiImpl.dispose();
         }
-        return Set.copyOf(result);
     }
 
     /**
@@ -186,18 +182,46 @@ public class CoquiTTSService implements TTSService {
      * @param newConfig Updated configuration
      */
     @Modified
-    private void updateConfig(Map<String, Object> newConfig) {
+    void updateConfig(Map<String, Object> newConfig) {
         logger.debug("Updating configuration");
         if (newConfig != null) {
             config.updateConfig(newConfig);
+            // publishes client, voices and formats at once, when they have been loaded
             apiImpl.setConfig(config);
-            allVoices = initVoices();
-            audioFormats = initAudioFormats();
+            composer.configure(config.announcementTemplates, config.templateSlotLibrary);
+            itemAnnouncements.configure(config.itemAnnouncements, config.itemAnnouncementRate);
         } else {
             logger.warn("Missing Coqui Cloud TTS configuration.");
         }
     }
 
+    /**
+     * Renders the announcements bound to an item after its state changed.
+     *
+     * @param item Name of the item
+     * @param state New state
+     * @param previousState Previous state
+     */
+    void itemStateChanged(String item, String state, String previousState) {
+        if (itemAnnouncements != null) {
+            itemAnnouncements.stateChanged(item, state, previousState);
+        }
+    }
+
+    /**
+     * @return Renderer of the announcements bound to items, used by the console commands
+     */
+    ItemAnnouncements getItemAnnouncements() {
+        return itemAnnouncements;
+    }
+
+    /**
+     * @return Coqui API implementation, used by the console commands
+     */
+    CoquiAPI getApi() {
+        return apiImpl;
+    }
+
     @Override
     public String getId() {
         return SERVICE_ID;
@@ -210,72 +234,93 @@ public class CoquiTTSService implements TTSService {
 
     @Override
     public Set<Voice> getAvailableVoices() {
-        return allVoices;
+        return apiImpl != null ? apiImpl.getRuntime().getVoiceSet() : Set.of();
     }
 
     @Override
     public Set<AudioFormat> getSupportedFormats() {
-        return audioFormats;
+        return apiImpl != null ? apiImpl.getRuntime().getFormats() : Set.of();
     }
 
     /**
-     * Helper to create AudioFormat objects from Coqui names.
+     * Checks parameters and calls the API to synthesize voice.
      *
-     * @param format Coqui audio format.
-     * @return Audio format object.
+     * @param text Input text.
+     * @param voice Selected voice.
+     * @param requestedFormat Format that is supported by the target sink as well.
+     * @return Output audio stream
+     * @throws TTSException in case the service is unavailable or a parameter is invalid.
      */
-    private @Nullable AudioFormat getAudioFormat(String format) {
-        Integer bitDepth = 16;
-        Long frequency = 44100L;
-
-        AudioEncoding encoding = AudioEncoding.valueOf(format);
-
-        switch (encoding) {
-            case LINEAR16:
-                // we use by default: wav, 44khz_16bit_mono
-                return new AudioFormat(AudioFormat.CONTAINER_WAVE, AudioFormat.CODEC_PCM_SIGNED, null, bitDepth, null,
-                        frequency);
-            default:
-                logger.warn("Audio format {} is not yet supported.", format);
-                return null;
-        }
+    @Override
+    public AudioStream synthesize(String text, Voice voice, AudioFormat requestedFormat) throws TTSException {
+        return synthesize(text, voice, requestedFormat, apiImpl.getRequestTimeout());
     }
 
     /**
-     * Checks parameters and calls the API to synthesize voice.
+     * Checks parameters and calls the API to synthesize voice within a deadline other than the configured request
+     * timeout.
      *
      * @param text Input text.
      * @param voice Selected voice.
      * @param requestedFormat Format that is supported by the target sink as well.
+     * @param timeout Time the synthesis may take, starting now
      * @return Output audio stream
-     * @throws TTSException in case the service is unavailable or a parameter is invalid.
+     * @throws TTSException in case the service is unavailable, a parameter is invalid or the deadline expired.
      */
-    @Override
-    public AudioStream synthesize(String text, Voice voice, AudioFormat requestedFormat) throws TTSException {
+    public AudioStream synthesize(String text, Voice voice, AudioFormat requestedFormat, Duration timeout)
+            throws TTSException {
         logger.debug("Synthesize '{}' for voice '{}' in format {}", text, voice.getUID(), requestedFormat);
 
+        // compose templated announcements and synthesize in one context, so a
+        // failed composition does not extend the deadline, and trace all steps
+        SynthesisContext context = apiImpl.newTracedContext(text, timeout);
+        try {
+            return synthesize(text, voice, requestedFormat, context);
+        } finally {
+            apiImpl.finishTrace(context);
+        }
+    }
+
+    private AudioStream synthesize(String text, Voice voice, AudioFormat requestedFormat, SynthesisContext context)
+            throws TTSException {
         // Validate arguments
         // trim text
         String trimmedText = text.trim();
-        if (trimmedText.isEmpty()) {
-            throw new TTSException("The passed text is null or empty");
-        }
-        if (!this.allVoices.contains(voice)) {
-            throw new TTSException("The passed voice is unsupported or service not initialized");
-        }
-        boolean isAudioFormatSupported = false;
-        for (AudioFormat currentAudioFormat : this.audioFormats) {
-            if (currentAudioFormat.isCompatible(requestedFormat)) {
-                isAudioFormatSupported = true;
-                break;
+        // validate against the snapshot the synthesis runs on, a concurrent reconfiguration does not affect it
+        RuntimeSnapshot runtime = context.getRuntime();
+        CoquiTTSVoice coquiVoice;
+        try (Trace.Span span = context.span("validation")) {
+            if (trimmedText.isEmpty()) {
+                throw new TTSException("The passed text is null or empty");
+            }
+            coquiVoice = runtime.findVoice(voice);
+            if (coquiVoice == null) {
+                throw new TTSException("The passed voice is unsupported or service not initialized");
+            }
+            boolean isAudioFormatSupported = false;
+            for (AudioFormat currentAudioFormat : runtime.getFormats()) {
+                if (currentAudioFormat.isCompatible(requestedFormat)) {
+                    isAudioFormatSupported = true;
+                    break;
+                }
+            }
+            if (!isAudioFormatSupported) {
+                throw new TTSException("The passed AudioFormat is unsupported");
             }
-        }
-        if (!isAudioFormatSupported) {
-            throw new TTSException("The passed AudioFormat is unsupported");
         }
 
+        // compose templated announcements from cached fragments, otherwise
         // create the audio byte array for given text, locale, format
-        byte[] audio = apiImpl.synthesizeSpeech(trimmedText, (CoquiTTSVoice) voice, requestedFormat.getCodec());
+        Trace.Span compose = context.enter("compose");
+        byte[] audio;
+        try {
+            audio = composer.compose(trimmedText, coquiVoice, requestedFormat.getCodec(), context);
+        } finally {
+            context.exit(compose);
+        }
+        if (audio == null) {
+            audio = apiImpl.synthesizeSpeech(trimmedText, coquiVoice, requestedFormat.getCodec(), context);
+        }
         if (audio == null) {
             throw new TTSException("Could not synthesize text via Coqui Cloud TTS Service");
         }
@@ -283,12 +328,26 @@ public class CoquiTTSService implements TTSService {
         // compute the real format returned by coqui if wave file
         AudioFormat finalFormat = requestedFormat;
         if (AudioFormat.CONTAINER_WAVE.equals(requestedFormat.getContainer())) {
-            finalFormat = parseAudioFormat(audio);
+            try (Trace.Span span = context.span("wav parsing")) {
+                finalFormat = parseAudioFormat(audio);
+            }
         }
 
         return new ByteArrayAudioStream(audio, finalFormat);
     }
 
+    /**
+     * Renders an announcement into the cache in the background lane, composed from its fragments if it matches a
+     * template.
+     */
+    private void prerender(String text, CoquiTTSVoice voice) throws TTSException {
+        SynthesisContext context = apiImpl.newContext(SynthesisScheduler.Lane.BACKGROUND);
+        String trimmedText = text.trim();
+        if (composer.compose(trimmedText, voice, AudioFormat.CODEC_PCM_SIGNED, context) == null) {
+            apiImpl.synthesizeSpeech(trimmedText, voice, AudioFormat.CODEC_PCM_SIGNED, context);
+        }
+    }
+
     private AudioFormat parseAudioFormat(byte[] audio) throws TTSException {
         try (InputStream inputStream = new ByteArrayInputStream(audio)) {
             return AudioWaveUtils.parseWavFormat(inputStream);
@@ -0,0 +1,252 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Answers announcements from the cache while the backend is unavailable.
+ * <p>
+ * A cached clip of the same voice is served if its text matches exactly, e.g. one cached under the namespace of a
+ * previous model, or if it matches after ignoring case, punctuation and whitespace. Otherwise the fallback clip
+ * configured for the voice is served. While the backend is not known to be healthy, a short connection probe is sent
+ * before a request, so announcements do not wait for the request timeout of a dead backend.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+class DegradedMode {
+
+    /**
+     * Voice name of the fallback clip used for all voices without their own
+     */
+    static final String ANY_VOICE = "*";
+
+    /**
+     * Time after a successful backend request during which no probes are sent
+     */
+    private static final long HEALTHY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * Time after a failed probe during which the backend is skipped without probing again
+     */
+    private static final long UNREACHABLE_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    /**
+     * Clip served in degraded mode and how it was found.
+     */
+    static class Answer {
+        final byte[] audio;
+        final String match;
+
+        Answer(byte[] audio, String match) {
+            this.audio = audio;
+            this.match = match;
+        }
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(DegradedMode.class);
+
+    private final CacheIndex cacheIndex;
+    private final File cacheFolder;
+
+    private volatile boolean enabled;
+    private volatile int probeTimeoutMillis = 1000;
+    private volatile Map<String, File> fallbackClips = Map.of();
+    private volatile long lastSuccess;
+    private volatile long lastUnreachable;
+
+    /**
+     * Number of degraded responses by how the clip was found
+     */
+    private final Map<String, LongAdder> responses = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param cacheIndex Index of the cached clips
+     * @param cacheFolder Cache folder
+     */
+    DegradedMode(CacheIndex cacheIndex, File cacheFolder) {
+        this.cacheIndex = cacheIndex;
+        this.cacheFolder = cacheFolder;
+    }
+
+    /**
+     * Configures the degraded mode.
+     *
+     * @param enabled {@code true} to answer from the cache while the backend is unavailable
+     * @param probeTimeoutMillis Time to wait for a connection to the backend
+     * @param fallbackEntries Fallback clips like {@code <voice>=<file>}, the voice given by its technical name or
+     *            {@value #ANY_VOICE}
+     * @param resolve Resolves the configured paths
+     */
+    void configure(boolean enabled, int probeTimeoutMillis, Collection<String> fallbackEntries,
+            Function<String, File> resolve) {
+        Map<String, File> clips = new HashMap<>();
+        for (String entry : fallbackEntries) {
+            int separator = entry.indexOf('=');
+            if (separator <= 0) {
+                logger.warn("Ignoring fallback clip '{}', expected <voice>=<file>", entry);
+                continue;
+            }
+            clips.put(entry.substring(0, separator).trim(), resolve.apply(entry.substring(separator + 1).trim()));
+        }
+        this.enabled = enabled;
+        this.probeTimeoutMillis = Math.max(1, probeTimeoutMillis);
+        this.fallbackClips = Map.copyOf(clips);
+    }
+
+    /**
+     * @return {@code true} if announcements are answered from the cache while the backend is unavailable
+     */
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return Time to wait for a connection to the backend
+     */
+    int getProbeTimeoutMillis() {
+        return probeTimeoutMillis;
+    }
+
+    /**
+     * @return {@code true} if the backend should be probed before a request, because no request succeeded recently
+     */
+    boolean shouldProbe() {
+        return enabled && System.currentTimeMillis() - lastSuccess > HEALTHY_MILLIS;
+    }
+
+    /**
+     * @return {@code true} if a probe failed so recently that the backend is skipped without probing again
+     */
+    boolean isUnreachable() {
+        return System.currentTimeMillis() - lastUnreachable < UNREACHABLE_MILLIS;
+    }
+
+    /**
+     * Records a successful backend request.
+     */
+    void recordSuccess() {
+        lastSuccess = System.currentTimeMillis();
+        lastUnreachable = 0;
+    }
+
+    /**
+     * Records a failed probe or backend request.
+     */
+    void recordUnreachable() {
+        lastUnreachable = System.currentTimeMillis();
+    }
+
+    /**
+     * @return Reachability of the backend like a circuit breaker, for the console: open while it is skipped after a
+     *         failure, half-open until a request succeeds again, closed otherwise
+     */
+    String getBreakerState() {
+        long now = System.currentTimeMillis();
+        long unreachable = lastUnreachable;
+        long success = lastSuccess;
+        if (unreachable != 0) {
+            return String.format("%s, backend unreachable %d s ago", isUnreachable() ? "open" : "half-open",
+                    TimeUnit.MILLISECONDS.toSeconds(now - unreachable));
+        }
+        return success == 0 ? "closed, no request yet"
+                : String.format("closed, last success %d s ago", TimeUnit.MILLISECONDS.toSeconds(now - success));
+    }
+
+    /**
+     * @return Number of degraded responses by how the clip was found, for the console
+     */
+    String getStatistics() {
+        return String.format("exact=%d normalized=%d fallback=%d none=%d", count("exact"), count("normalized"),
+                count("fallback"), count("none"));
+    }
+
+    private long count(String match) {
+        LongAdder counter = responses.get(match);
+        return counter != null ? counter.sum() : 0;
+    }
+
+    /**
+     * Finds a clip to serve instead of synthesizing the text.
+     *
+     * @param text Normalized text
+     * @param voiceName Technical name of the voice
+     * @return Clip and how it was found, or {@code null} if there is none
+     */
+    @Nullable Answer find(String text, String voiceName) {
+        Answer answer = lookup(text, voiceName);
+        responses.computeIfAbsent(answer != null ? answer.match : "none", k -> new LongAdder()).increment();
+        return answer;
+    }
+
+    private @Nullable Answer lookup(String text, String voiceName) {
+        List<CacheIndex.Entry> candidates = cacheIndex.list(e -> voiceName.equals(e.getVoice()) && e.getText() != null);
+        Answer answer = read(candidates.stream().filter(e -> text.equals(e.getText())).findFirst().orElse(null),
+                "exact");
+        if (answer == null) {
+            String loose = loosen(text);
+            answer = read(candidates.stream().filter(e -> loose.equals(loosen(String.valueOf(e.getText()))))
+                    .findFirst().orElse(null), "normalized");
+        }
+        if (answer == null) {
+            File fallback = fallbackClips.getOrDefault(voiceName, fallbackClips.get(ANY_VOICE));
+            if (fallback != null) {
+                try {
+                    answer = new Answer(Files.readAllBytes(fallback.toPath()), "fallback");
+                } catch (IOException e) {
+                    logger.warn("Could not read fallback clip {}: {}", fallback, e.getMessage());
+                }
+            }
+        }
+        return answer;
+    }
+
+    private @Nullable Answer read(CacheIndex.@Nullable Entry entry, String match) {
+        if (entry == null) {
+            return null;
+        }
+        try {
+            return new Answer(Files.readAllBytes(new File(cacheFolder, entry.getKey() + "." + entry.format).toPath()),
+                    match);
+        } catch (IOException e) {
+            logger.debug("Could not read stale cache entry {}: {}", entry.getKey(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return Text in lower case without punctuation and with single spaces, so "Door open." matches "door, open"
+     */
+    private static String loosen(String text) {
+        return text.toLowerCase(Locale.ROOT).replaceAll("[^\\p{L}\\p{N}]+", " ").trim();
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Shared cache in a directory mounted by all instances, e.g. over NFS or SMB.
+ * <p>
+ * Entries are published with the atomic {@link CacheWriter}, so instances never read partially written entries.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+class DirectorySharedCache implements SharedCache {
+
+    private final File folder;
+    private final CacheWriter writer;
+
+    /**
+     * @param folder Shared directory
+     * @throws IOException if the directory does not exist and cannot be created
+     */
+    DirectorySharedCache(File folder) throws IOException {
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            throw new IOException("Shared cache directory " + folder + " cannot be created");
+        }
+        this.folder = folder;
+        this.writer = new CacheWriter(folder);
+    }
+
+    @Override
+    public byte @Nullable [] get(String fileName, int timeoutMillis) throws IOException {
+        try {
+            return Files.readAllBytes(new File(folder, fileName).toPath());
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void put(String fileName, byte[] audio) throws IOException {
+        if (!new File(folder, fileName).exists()) {
+            writer.write(fileName, fileName, audio);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "directory " + folder;
+    }
+}
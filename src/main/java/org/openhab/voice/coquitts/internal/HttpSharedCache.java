@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.util.BytesContentProvider;
+import org.eclipse.jetty.client.util.FutureResponseListener;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+
+/**
+ * Shared cache in a simple HTTP blob store: entries are read with {@code GET <url>/<file>} and published with
+ * {@code PUT <url>/<file>}. Any WebDAV server or object store with anonymous access can act as blob store.
+ * <p>
+ * After a failed request the blob store is skipped for a while, doubling the pause with every further failure, so an
+ * unreachable store does not delay every cache miss by its timeout.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+class HttpSharedCache implements SharedCache {
+
+    private static final long TIMEOUT_MILLIS = 3000;
+    private static final long MIN_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * Largest clip read from the blob store, room for the WAV header on top of the PCM data
+     */
+    private static final int MAX_CONTENT_LENGTH = WaveUtils.MAX_PCM_SIZE + 64 * 1024;
+
+    private final String baseUrl;
+    private final HttpClient httpClient;
+
+    private final Object lock = new Object();
+    private int failures;
+    private long skipUntil;
+
+    /**
+     * @param baseUrl Base URL of the blob store
+     * @param httpClient HTTP client
+     */
+    HttpSharedCache(String baseUrl, HttpClient httpClient) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+        this.httpClient = httpClient;
+    }
+
+    @Override
+    public byte @Nullable [] get(String fileName, int timeoutMillis) throws IOException {
+        checkAvailable();
+        ContentResponse response = send(newRequest(fileName).method(HttpMethod.GET),
+                Math.min(TIMEOUT_MILLIS, timeoutMillis));
+        if (response.getStatus() == HttpStatus.NOT_FOUND_404) {
+            recordSuccess();
+            return null;
+        }
+        if (response.getStatus() != HttpStatus.OK_200) {
+            recordFailure();
+            throw new IOException("Shared cache returned status " + response.getStatus());
+        }
+        recordSuccess();
+        return response.getContent();
+    }
+
+    @Override
+    public void put(String fileName, byte[] audio) throws IOException {
+        checkAvailable();
+        ContentResponse response = send(
+                newRequest(fileName).method(HttpMethod.PUT).content(new BytesContentProvider("audio/wav", audio)),
+                TIMEOUT_MILLIS);
+        if (!HttpStatus.isSuccess(response.getStatus())) {
+            recordFailure();
+            throw new IOException("Shared cache returned status " + response.getStatus());
+        }
+        recordSuccess();
+    }
+
+    private Request newRequest(String fileName) {
+        // the file name is a single path segment, URLEncoder encodes for forms
+        return httpClient.newRequest(baseUrl + URLEncoder.encode(fileName, StandardCharsets.UTF_8).replace("+", "%20"));
+    }
+
+    /**
+     * Sends a request, buffering up to {@link #MAX_CONTENT_LENGTH} bytes of its response.
+     */
+    private ContentResponse send(Request request, long timeoutMillis) throws IOException {
+        FutureResponseListener listener = new FutureResponseListener(request, MAX_CONTENT_LENGTH);
+        request.timeout(timeoutMillis, TimeUnit.MILLISECONDS).send(listener);
+        try {
+            return listener.get();
+        } catch (InterruptedException e) {
+            request.abort(e);
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            // an oversized entry says nothing about the blob store
+            if (!(e.getCause() instanceof IllegalArgumentException)) {
+                recordFailure();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private void checkAvailable() throws IOException {
+        synchronized (lock) {
+            long remaining = skipUntil - System.currentTimeMillis();
+            if (remaining > 0) {
+                throw new IOException("Shared cache is skipped for " + remaining + " ms after " + failures
+                        + " failed requests");
+            }
+        }
+    }
+
+    private void recordSuccess() {
+        synchronized (lock) {
+            failures = 0;
+            skipUntil = 0;
+        }
+    }
+
+    private void recordFailure() {
+        synchronized (lock) {
+            long backoff = Math.min(MAX_BACKOFF_MILLIS, MIN_BACKOFF_MILLIS << Math.min(failures, 16));
+            failures++;
+            skipUntil = System.currentTimeMillis() + backoff;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "blob store " + baseUrl;
+    }
+}
@@ -12,5 +12,29 @@ public interface ICoquiTTSClient {
 
     List<String> getLanguages() throws IOException;
 
-    byte[] synthesize(String text, CoquiTTSVoice voice) throws IOException;
+    /**
+     * Identifies the model serving the requests. Cache keys are derived from it, so they survive host and port changes
+     * but change with the model.
+     */
+    String getBackendIdentity() throws IOException;
+
+    /**
+     * Synthesizes the text. Backend requests are executed in the lane of the context by the client's scheduler, and
+     * are cancelled with the context or when its deadline expires.
+     */
+    byte[] synthesize(String text, CoquiTTSVoice voice, SynthesisContext context) throws IOException;
+
+    /**
+     * Checks quickly that the backend accepts connections, without synthesizing anything.
+     *
+     * @param timeoutMillis Time to wait for the connection
+     * @throws IOException if the backend could not be reached in time
+     */
+    void probe(int timeoutMillis) throws IOException;
+
+    /**
+     * Releases the resources of the client. Called once it has been replaced and its last synthesis is done.
+     */
+    default void close() {
+    }
 }
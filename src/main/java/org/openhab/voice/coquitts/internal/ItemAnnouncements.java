@@ -0,0 +1,282 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.voice.TTSException;
+import org.openhab.voice.coquitts.internal.dto.CoquiTTSVoice;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Renders announcements bound to the state of an item into the cache when the item changes, so the announcement of a
+ * rule reacting to the same change is a cache hit.
+ * <p>
+ * Bindings like {@code GarageDoor=The garage door is {state}} are rendered with the new state of the item, and with
+ * the previous state if it is not a number, as the item is likely to change back. Renders are deduplicated: texts
+ * that are cached or already queued are skipped. They are rate-limited by a token bucket refilled with the configured
+ * number of renders per minute, state changes exceeding it are dropped.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+class ItemAnnouncements {
+
+    static final String STATE_PLACEHOLDER = "{state}";
+
+    /**
+     * States of items that are not initialized, never announced
+     */
+    private static final Set<String> UNDEFINED_STATES = Set.of("NULL", "UNDEF");
+
+    /**
+     * Renders a text into the cache.
+     */
+    interface Renderer {
+        /**
+         * @param text Announcement text
+         * @param voice Voice
+         * @return {@code true} if the text is cached
+         */
+        boolean isCached(String text, CoquiTTSVoice voice);
+
+        /**
+         * @param text Announcement text
+         * @param voice Voice
+         * @throws TTSException if the text could not be synthesized
+         */
+        void render(String text, CoquiTTSVoice voice) throws TTSException;
+    }
+
+    /**
+     * Template of the announcement of an item and the voice given by its UID, technical name or label, if any.
+     */
+    private static class Binding {
+        final String template;
+        final @Nullable String voice;
+
+        Binding(String template, @Nullable String voice) {
+            this.template = template;
+            this.voice = voice;
+        }
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(ItemAnnouncements.class);
+
+    private final Executor executor;
+    private final Renderer renderer;
+    private final Supplier<List<CoquiTTSVoice>> voices;
+    private final Supplier<@Nullable CoquiTTSVoice> lastVoice;
+
+    private volatile Map<String, List<Binding>> bindings = Map.of();
+
+    /**
+     * Voice UID and text of the renders queued or in progress
+     */
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Set when the service is disposed, queued renders are skipped from then on
+     */
+    private volatile boolean stopped;
+
+    private int renderRate;
+    private double tokens;
+    private long refilledAt = System.nanoTime();
+
+    private final AtomicLong rendered = new AtomicLong();
+    private final AtomicLong cached = new AtomicLong();
+    private final AtomicLong deduplicated = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param executor Executor of the renders
+     * @param renderer Renders a text into the cache
+     * @param voices Available voices
+     * @param lastVoice Voice of the last announcement, used for bindings without a voice
+     */
+    ItemAnnouncements(Executor executor, Renderer renderer, Supplier<List<CoquiTTSVoice>> voices,
+            Supplier<@Nullable CoquiTTSVoice> lastVoice) {
+        this.executor = executor;
+        this.renderer = renderer;
+        this.voices = voices;
+        this.lastVoice = lastVoice;
+    }
+
+    /**
+     * Sets the bindings and the rate limit.
+     *
+     * @param entries Bindings like {@code <item>=<template>} or {@code <item>@<voice>=<template>}, the template
+     *            containing {@value #STATE_PLACEHOLDER}
+     * @param rendersPerMinute Maximum number of renders per minute, 0 disables rendering
+     */
+    void configure(Collection<String> entries, int rendersPerMinute) {
+        Map<String, List<Binding>> parsed = new HashMap<>();
+        for (String entry : entries) {
+            int separator = entry.indexOf('=');
+            if (separator <= 0 || entry.substring(separator + 1).isBlank()) {
+                logger.warn("Ignoring item announcement '{}', expected <item>=<template> or <item>@<voice>=<template>",
+                        entry);
+                continue;
+            }
+            String item = entry.substring(0, separator).trim();
+            String voice = null;
+            int at = item.indexOf('@');
+            if (at > 0) {
+                voice = item.substring(at + 1).trim();
+                item = item.substring(0, at).trim();
+            }
+            parsed.computeIfAbsent(item, k -> new ArrayList<>())
+                    .add(new Binding(entry.substring(separator + 1).trim(), voice));
+        }
+        bindings = Map.copyOf(parsed);
+        synchronized (this) {
+            if (renderRate != rendersPerMinute) {
+                // start with a full bucket
+                renderRate = Math.max(0, rendersPerMinute);
+                tokens = renderRate;
+            }
+        }
+        logger.debug("Configured announcements of {} items, {} renders per minute", parsed.size(), rendersPerMinute);
+    }
+
+    /**
+     * Stops rendering. Queued renders are skipped, a render already running finishes or fails with the API.
+     */
+    void stop() {
+        stopped = true;
+        bindings = Map.of();
+    }
+
+    /**
+     * Renders the announcements bound to an item in the background.
+     *
+     * @param item Name of the item
+     * @param state New state of the item
+     * @param previousState Previous state of the item
+     */
+    void stateChanged(String item, String state, String previousState) {
+        List<Binding> itemBindings = bindings.get(item);
+        if (itemBindings == null || stopped) {
+            return;
+        }
+        for (Binding binding : itemBindings) {
+            CoquiTTSVoice voice = resolveVoice(binding.voice);
+            if (voice == null) {
+                logger.debug("No voice to render the announcement of {}", item);
+                continue;
+            }
+            if (!UNDEFINED_STATES.contains(state)) {
+                submit(binding.template.replace(STATE_PLACEHOLDER, state), voice);
+            }
+            if (!UNDEFINED_STATES.contains(previousState) && !isNumber(previousState) && !previousState.equals(state)) {
+                submit(binding.template.replace(STATE_PLACEHOLDER, previousState), voice);
+            }
+        }
+    }
+
+    /**
+     * @return Counters of the renders, for the console
+     */
+    String getStatistics() {
+        return String.format("%d rendered, %d cached, %d deduplicated, %d rate limited, %d failed", rendered.get(),
+                cached.get(), deduplicated.get(), rateLimited.get(), failed.get());
+    }
+
+    private void submit(String text, CoquiTTSVoice voice) {
+        String key = voice.getUID() + '\n' + text;
+        if (!pending.add(key)) {
+            deduplicated.incrementAndGet();
+            return;
+        }
+        if (renderer.isCached(text, voice)) {
+            pending.remove(key);
+            cached.incrementAndGet();
+            return;
+        }
+        if (!acquireToken()) {
+            pending.remove(key);
+            rateLimited.incrementAndGet();
+            logger.debug("Rate limit reached, not rendering '{}'", text);
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    if (stopped) {
+                        return;
+                    }
+                    renderer.render(text, voice);
+                    rendered.incrementAndGet();
+                } catch (TTSException e) {
+                    failed.incrementAndGet();
+                    logger.debug("Could not render '{}': {}", text, e.getMessage());
+                } finally {
+                    pending.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(key);
+        }
+    }
+
+    private synchronized boolean acquireToken() {
+        long now = System.nanoTime();
+        tokens = Math.min(renderRate, tokens + renderRate * (now - refilledAt) / (double) TimeUnit.MINUTES.toNanos(1));
+        refilledAt = now;
+        if (tokens < 1) {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+
+    private @Nullable CoquiTTSVoice resolveVoice(@Nullable String name) {
+        if (name == null) {
+            return lastVoice.get();
+        }
+        for (CoquiTTSVoice voice : voices.get()) {
+            if (name.equals(voice.getUID()) || name.equals(voice.getTechnicalName())
+                    || name.equalsIgnoreCase(voice.getLabel())) {
+                return voice;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isNumber(String state) {
+        try {
+            Double.parseDouble(state.split(" ", 2)[0]);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps a self-hosted backend warm.
+ * <p>
+ * A tiny text is synthesized periodically, so pooled connections stay open and the server keeps its model loaded.
+ * Probes bypass the cache and are skipped while the backend is busy anyway. Their latency is recorded as health
+ * metric of the backend.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+class KeepWarm {
+
+    static final String PROBE_TEXT = "Ok.";
+
+    /**
+     * Function sending one probe
+     */
+    @FunctionalInterface
+    interface Probe {
+        void send() throws IOException;
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(KeepWarm.class);
+
+    private final ScheduledExecutorService executor;
+    private final Probe probe;
+    private final SynthesisScheduler scheduler;
+
+    private @Nullable ScheduledFuture<?> job;
+    private Duration interval = Duration.ZERO;
+
+    private long probes;
+    private long failures;
+    private long skipped;
+    private long lastLatencyMillis = -1;
+    private long minLatencyMillis = Long.MAX_VALUE;
+    private long maxLatencyMillis;
+    private long totalLatencyMillis;
+    private @Nullable Instant lastProbe;
+    private @Nullable String lastError;
+
+    /**
+     * Constructor.
+     *
+     * @param executor Executor running the probes
+     * @param scheduler Scheduler of the backend requests, used to skip probes while requests are running
+     * @param probe Function sending one probe
+     */
+    KeepWarm(ScheduledExecutorService executor, SynthesisScheduler scheduler, Probe probe) {
+        this.executor = executor;
+        this.scheduler = scheduler;
+        this.probe = probe;
+    }
+
+    /**
+     * (Re)starts the probes.
+     *
+     * @param interval Interval between two probes, probes are stopped if zero or negative
+     */
+    synchronized void start(Duration interval) {
+        stop();
+        this.interval = interval;
+        if (interval.isZero() || interval.isNegative()) {
+            return;
+        }
+        // the first probe warms the backend right away
+        job = executor.scheduleWithFixedDelay(this::run, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+        logger.debug("Keeping backend warm every {} s", interval.toSeconds());
+    }
+
+    /**
+     * Stops the probes.
+     */
+    synchronized void stop() {
+        ScheduledFuture<?> current = job;
+        if (current != null) {
+            current.cancel(true);
+            job = null;
+        }
+        interval = Duration.ZERO;
+    }
+
+    private void run() {
+        if (isBackendBusy()) {
+            synchronized (this) {
+                skipped++;
+            }
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            probe.send();
+            long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            synchronized (this) {
+                probes++;
+                lastLatencyMillis = latency;
+                minLatencyMillis = Math.min(minLatencyMillis, latency);
+                maxLatencyMillis = Math.max(maxLatencyMillis, latency);
+                totalLatencyMillis += latency;
+                lastProbe = Instant.now();
+                lastError = null;
+            }
+            logger.trace("Keep-warm probe took {} ms", latency);
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                failures++;
+                lastProbe = Instant.now();
+                lastError = e.getMessage();
+            }
+            logger.debug("Keep-warm probe failed: {}", e.getMessage());
+        }
+    }
+
+    private boolean isBackendBusy() {
+        for (SynthesisScheduler.Lane lane : SynthesisScheduler.Lane.values()) {
+            if (scheduler.getActiveCount(lane) > 0 || scheduler.getQueueDepth(lane) > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Latency of the last successful probe in milliseconds, -1 if there was none
+     */
+    synchronized long getLastLatencyMillis() {
+        return lastLatencyMillis;
+    }
+
+    /**
+     * @return Human readable health metrics
+     */
+    synchronized String getHealth() {
+        if (job == null) {
+            return "Keep-warm probes disabled";
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Keep-warm probes every %d s: %d succeeded, %d failed, %d skipped while busy",
+                interval.toSeconds(), probes, failures, skipped));
+        if (probes > 0) {
+            sb.append(String.format("%nProbe latency: last %d ms, min %d ms, avg %d ms, max %d ms", lastLatencyMillis,
+                    minLatencyMillis, totalLatencyMillis / probes, maxLatencyMillis));
+        }
+        Instant last = lastProbe;
+        if (last != null) {
+            sb.append("\nLast probe at ").append(last);
+            String error = lastError;
+            if (error != null) {
+                sb.append(" failed: ").append(error);
+            }
+        }
+        return sb.toString();
+    }
+}
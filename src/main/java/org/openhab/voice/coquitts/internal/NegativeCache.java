@@ -0,0 +1,133 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.voice.TTSException;
+
+/**
+ * Remembers failed syntheses per voice and text.
+ * <p>
+ * After a failure the same voice and text is rejected without contacting the backend until its backoff expires. The
+ * backoff starts at {@link #INITIAL_BACKOFF} and doubles with every further failure up to {@link #MAX_BACKOFF}.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+class NegativeCache {
+
+    static final Duration INITIAL_BACKOFF = Duration.ofSeconds(5);
+    static final Duration MAX_BACKOFF = Duration.ofMinutes(10);
+
+    /**
+     * Failure state of a voice and text.
+     */
+    private static class Entry {
+        final int failures;
+        final long retryAt;
+        final String reason;
+
+        Entry(int failures, long retryAt, String reason) {
+            this.failures = failures;
+            this.retryAt = retryAt;
+            this.reason = reason;
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Fails fast if the voice and text failed recently.
+     *
+     * @param voiceName Technical name of the voice
+     * @param text Text to synthesize
+     * @throws TTSException if the backoff of a previous failure has not expired yet
+     */
+    void check(String voiceName, String text) throws TTSException {
+        Entry entry = entries.get(key(voiceName, text));
+        if (entry == null) {
+            return;
+        }
+        long remaining = entry.retryAt - System.currentTimeMillis();
+        if (remaining > 0) {
+            throw new TTSException(String.format(
+                    "Synthesis for voice '%s' failed %d time(s) recently (%s), next attempt in %d s", voiceName,
+                    entry.failures, entry.reason, Math.max(1, remaining / 1000)));
+        }
+    }
+
+    /**
+     * Records a failed synthesis and extends the backoff.
+     *
+     * @param voiceName Technical name of the voice
+     * @param text Text to synthesize
+     * @param reason Short description of the failure
+     * @return Backoff until the next attempt
+     */
+    Duration recordFailure(String voiceName, String text, @Nullable String reason) {
+        prune();
+        Entry entry = entries.compute(key(voiceName, text), (k, previous) -> {
+            int failures = previous == null ? 1 : previous.failures + 1;
+            return new Entry(failures, System.currentTimeMillis() + backoff(failures).toMillis(),
+                    reason == null ? "unknown error" : reason);
+        });
+        return backoff(entry.failures);
+    }
+
+    /**
+     * Forgets the failures of a voice and text after a successful synthesis.
+     *
+     * @param voiceName Technical name of the voice
+     * @param text Synthesized text
+     */
+    void recordSuccess(String voiceName, String text) {
+        entries.remove(key(voiceName, text));
+    }
+
+    /**
+     * Forgets all failures, e.g. after the voices have been reloaded.
+     */
+    void clear() {
+        entries.clear();
+    }
+
+    /**
+     * @return Number of voice and text combinations currently backed off
+     */
+    int size() {
+        long now = System.currentTimeMillis();
+        return (int) entries.values().stream().filter(e -> e.retryAt > now).count();
+    }
+
+    /**
+     * Drops entries whose backoff expired long ago, so texts that are never retried do not accumulate.
+     */
+    private void prune() {
+        long expired = System.currentTimeMillis() - MAX_BACKOFF.toMillis();
+        entries.values().removeIf(e -> e.retryAt < expired);
+    }
+
+    private static Duration backoff(int failures) {
+        long millis = INITIAL_BACKOFF.toMillis() << Math.min(failures - 1, 20);
+        return Duration.ofMillis(Math.min(millis, MAX_BACKOFF.toMillis()));
+    }
+
+    private static String key(String voiceName, String text) {
+        return voiceName + '\n' + text;
+    }
+}
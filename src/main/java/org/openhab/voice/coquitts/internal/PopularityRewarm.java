@@ -0,0 +1,208 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.voice.coquitts.internal.dto.CoquiTTSVoice;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Re-renders the most played texts in the background after the backend identity or the voice set changed, so they
+ * are cached again before the next announcement needs them.
+ * <p>
+ * Texts are rendered in popularity order until the configured number of texts is reached. Texts that no longer fit
+ * into the character budget, texts already cached under the current keys and texts of voices no longer available are
+ * skipped. A change reported while
+ * a run is in progress starts another run afterwards.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+class PopularityRewarm {
+
+    /**
+     * Renders a text into the cache.
+     */
+    @FunctionalInterface
+    interface Renderer {
+        /**
+         * @param entry Index entry of the text in the previous cache
+         * @param voice Voice of the entry
+         * @return {@code true} if the text was rendered, {@code false} if it was already cached or failed
+         */
+        boolean render(CacheIndex.Entry entry, CoquiTTSVoice voice);
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(PopularityRewarm.class);
+
+    private final CacheIndex cacheIndex;
+    private final Executor executor;
+    private final Renderer renderer;
+
+    private volatile int topTexts;
+    private volatile int characterBudget;
+    private volatile Map<String, CoquiTTSVoice> voices = Map.of();
+    private @Nullable Set<String> voiceNames;
+
+    private boolean running;
+    private @Nullable String pending;
+
+    private volatile String lastRun = "never";
+
+    /**
+     * Constructor.
+     *
+     * @param cacheIndex Index holding the play counts
+     * @param executor Executor of the background runs
+     * @param renderer Renders a text into the cache
+     */
+    PopularityRewarm(CacheIndex cacheIndex, Executor executor, Renderer renderer) {
+        this.cacheIndex = cacheIndex;
+        this.executor = executor;
+        this.renderer = renderer;
+    }
+
+    /**
+     * Configures the budget of a run.
+     *
+     * @param topTexts Number of most played texts to re-render, 0 disables re-rendering
+     * @param characterBudget Maximum number of characters synthesized per run
+     */
+    void configure(int topTexts, int characterBudget) {
+        this.topTexts = topTexts;
+        this.characterBudget = characterBudget;
+    }
+
+    /**
+     * Updates the available voices and re-renders if they changed. The first voices set are taken as they are.
+     *
+     * @param available Available voices
+     */
+    void setVoices(Collection<CoquiTTSVoice> available) {
+        Map<String, CoquiTTSVoice> byName = new HashMap<>();
+        available.forEach(v -> byName.put(v.getTechnicalName(), v));
+        voices = Map.copyOf(byName);
+        Set<String> previous;
+        synchronized (this) {
+            previous = voiceNames;
+            voiceNames = new HashSet<>(byName.keySet());
+        }
+        if (previous != null && !previous.equals(byName.keySet())) {
+            trigger("voices changed");
+        }
+    }
+
+    /**
+     * Starts a run in the background, or another run after the current one.
+     *
+     * @param reason Reason of the run, for the log
+     */
+    void trigger(String reason) {
+        if (topTexts <= 0) {
+            return;
+        }
+        synchronized (this) {
+            if (running) {
+                pending = reason;
+                return;
+            }
+            running = true;
+        }
+        try {
+            executor.execute(() -> run(reason));
+        } catch (RejectedExecutionException e) {
+            logger.debug("Could not start re-rendering popular texts: {}", e.getMessage());
+            synchronized (this) {
+                running = false;
+            }
+        }
+    }
+
+    /**
+     * @return Summary of the last run
+     */
+    String getLastRun() {
+        return lastRun;
+    }
+
+    private void run(String reason) {
+        String next = reason;
+        while (next != null) {
+            rewarm(next);
+            synchronized (this) {
+                next = pending;
+                pending = null;
+                if (next == null) {
+                    running = false;
+                }
+            }
+        }
+    }
+
+    private void rewarm(String reason) {
+        int limit = topTexts;
+        int budget = characterBudget;
+        Map<String, CoquiTTSVoice> available = voices;
+        logger.debug("Re-rendering up to {} popular texts, {}", limit, reason);
+
+        // the same text may be indexed under several namespaces, the most played entry comes first
+        List<CacheIndex.Entry> popular = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (CacheIndex.Entry entry : cacheIndex.mostPlayed(Integer.MAX_VALUE)) {
+            if (popular.size() >= limit) {
+                break;
+            }
+            String text = entry.getText();
+            String voice = entry.getVoice();
+            if (text != null && voice != null && seen.add(voice + '\n' + text)) {
+                popular.add(entry);
+            }
+        }
+
+        int rendered = 0;
+        int characters = 0;
+        for (CacheIndex.Entry entry : popular) {
+            String text = entry.getText();
+            CoquiTTSVoice voice = available.get(entry.getVoice());
+            if (text == null || voice == null) {
+                continue;
+            }
+            if (characters + text.length() > budget) {
+                // shorter texts further down may still fit
+                logger.debug("Skipping '{}', it exceeds the remaining character budget of {}", text,
+                        budget - characters);
+                continue;
+            }
+            if (renderer.render(entry, voice)) {
+                rendered++;
+                characters += text.length();
+            }
+        }
+        lastRun = String.format("%d texts with %d characters re-rendered, %s", rendered, characters, reason);
+        if (rendered > 0) {
+            logger.info("Re-rendered {} popular texts, {}", rendered, reason);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.audio.AudioFormat;
+import org.openhab.core.voice.Voice;
+import org.openhab.voice.coquitts.internal.dto.CoquiTTSVoice;
+
+/**
+ * Immutable state a synthesis runs on: the backend client, its voices and formats and the namespace of the cache keys.
+ * <p>
+ * A new snapshot is built and warmed up when the configuration changes, and then published as a whole. Syntheses
+ * started on the previous snapshot finish on it. Its client is released once the last of them is done.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+final class RuntimeSnapshot {
+
+    /**
+     * Client shared by the snapshots of one configuration, released when it is retired and no longer used.
+     */
+    static final class Lease {
+        private final @Nullable ICoquiTTSClient client;
+        private int users;
+        private boolean retired;
+        private boolean released;
+
+        Lease(@Nullable ICoquiTTSClient client) {
+            this.client = client;
+        }
+
+        /**
+         * @return {@code true} if the client may be used until {@link #release()}, {@code false} if it has been
+         *         released already
+         */
+        synchronized boolean acquire() {
+            if (released) {
+                return false;
+            }
+            users++;
+            return true;
+        }
+
+        /**
+         * Ends a use of the client.
+         */
+        void release() {
+            boolean close;
+            synchronized (this) {
+                users--;
+                close = retired && users == 0 && !released;
+                released |= close;
+            }
+            if (close) {
+                close();
+            }
+        }
+
+        /**
+         * Marks the client as replaced, it is released as soon as it is no longer used.
+         */
+        void retire() {
+            boolean close;
+            synchronized (this) {
+                retired = true;
+                close = users == 0 && !released;
+                released |= close;
+            }
+            if (close) {
+                close();
+            }
+        }
+
+        /**
+         * @return Number of syntheses using the client
+         */
+        synchronized int getUsers() {
+            return users;
+        }
+
+        private void close() {
+            ICoquiTTSClient current = client;
+            if (current != null) {
+                current.close();
+            }
+        }
+    }
+
+    /**
+     * Backend name of a snapshot without client
+     */
+    static final String NO_BACKEND = "none";
+
+    /**
+     * Creates a snapshot without client, used before the service is configured and after it is disposed. Every
+     * holder gets its own, so retiring one does not release the lease of another.
+     *
+     * @return New snapshot without client and voices
+     */
+    static RuntimeSnapshot empty() {
+        return new RuntimeSnapshot(new Lease(null), NO_BACKEND, null, List.of(), Set.of());
+    }
+
+    private final Lease lease;
+    private final String backendName;
+    private final @Nullable String namespace;
+    private final List<CoquiTTSVoice> voices;
+    private final Set<Voice> voiceSet;
+    private final Set<AudioFormat> formats;
+
+    /**
+     * Constructor.
+     *
+     * @param lease Lease of the backend client
+     * @param backendName Name of the backend in statistics
+     * @param namespace Namespace of the cache keys, {@code null} if the backend identity is not known yet
+     * @param voices Voices of the backend
+     * @param formats Supported audio formats
+     */
+    RuntimeSnapshot(Lease lease, String backendName, @Nullable String namespace, List<CoquiTTSVoice> voices,
+            Set<AudioFormat> formats) {
+        this.lease = lease;
+        this.backendName = backendName;
+        this.namespace = namespace;
+        this.voices = List.copyOf(voices);
+        this.voiceSet = Set.copyOf(voices);
+        this.formats = Set.copyOf(formats);
+    }
+
+    /**
+     * @param resolved Resolved namespace of the cache keys
+     * @return Copy of the snapshot with the namespace, sharing the client
+     */
+    RuntimeSnapshot withNamespace(String resolved) {
+        return new RuntimeSnapshot(lease, backendName, resolved, voices, formats);
+    }
+
+    Lease getLease() {
+        return lease;
+    }
+
+    @Nullable
+    ICoquiTTSClient getClient() {
+        return lease.client;
+    }
+
+    String getBackendName() {
+        return backendName;
+    }
+
+    @Nullable
+    String getNamespace() {
+        return namespace;
+    }
+
+    List<CoquiTTSVoice> getVoices() {
+        return voices;
+    }
+
+    /**
+     * Looks a voice up by its UID, so voices handed out before a reconfiguration still match the new snapshot.
+     *
+     * @return The voice of this snapshot with the UID of the passed voice, or null if the backend does not offer it
+     */
+    @Nullable
+    CoquiTTSVoice findVoice(Voice voice) {
+        String uid = voice.getUID();
+        for (CoquiTTSVoice candidate : voices) {
+            if (candidate.getUID().equals(uid)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Voices of the backend as required by the TTS service
+     */
+    Set<Voice> getVoiceSet() {
+        return voiceSet;
+    }
+
+    Set<AudioFormat> getFormats() {
+        return formats;
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import java.io.IOException;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Second-level cache shared by several openHAB instances, addressed by the cache key of an entry.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+interface SharedCache {
+
+    /**
+     * Looks up an entry.
+     *
+     * @param fileName Cache key with file extension
+     * @param timeoutMillis Time to wait for the shared cache
+     * @return Audio of the entry or {@code null} if the shared cache does not contain it
+     * @throws IOException if the shared cache is not reachable
+     */
+    byte @Nullable [] get(String fileName, int timeoutMillis) throws IOException;
+
+    /**
+     * Publishes an entry.
+     *
+     * @param fileName Cache key with file extension
+     * @param audio Audio of the entry
+     * @throws IOException if the shared cache is not reachable
+     */
+    void put(String fileName, byte[] audio) throws IOException;
+}
@@ -0,0 +1,270 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Lane and deadline of one synthesis, passed from the service down to every chunk request.
+ * <p>
+ * Backend requests and HTTP exchanges started for the synthesis are registered with the context. They are cancelled
+ * together when the deadline expires while waiting for them, or when {@link #cancel()} is called, e.g. because the
+ * caller has given up.
+ * <p>
+ * If the synthesis is traced, its steps are recorded as spans below the span currently entered.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+class SynthesisContext {
+
+    /**
+     * Registration of a cancellation action, closed once the work it cancels is done.
+     */
+    interface Registration extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private final SynthesisScheduler.Lane lane;
+    private final long deadlineNanos;
+    private final Duration timeout;
+
+    private final List<Runnable> cancellations = new ArrayList<>();
+    private boolean cancelled;
+
+    private final @Nullable Trace trace;
+    private volatile Trace.Span current;
+    private volatile RuntimeSnapshot runtime;
+
+    /**
+     * Constructor.
+     *
+     * @param lane Scheduler lane of the backend requests
+     * @param timeout Time the synthesis may take, starting now
+     */
+    SynthesisContext(SynthesisScheduler.Lane lane, Duration timeout) {
+        this(lane, timeout, RuntimeSnapshot.empty(), null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param lane Scheduler lane of the backend requests
+     * @param timeout Time the synthesis may take, starting now
+     * @param runtime Snapshot the synthesis runs on
+     * @param trace Trace recording the steps of the synthesis, or {@code null} if it is not traced
+     */
+    SynthesisContext(SynthesisScheduler.Lane lane, Duration timeout, RuntimeSnapshot runtime,
+            @Nullable Trace trace) {
+        this.lane = lane;
+        this.timeout = timeout;
+        this.deadlineNanos = System.nanoTime() + timeout.toNanos();
+        this.runtime = runtime;
+        this.trace = trace;
+        this.current = trace != null ? trace.getRoot() : Trace.NOOP;
+    }
+
+    /**
+     * @return Snapshot of client, voices and cache namespace the synthesis runs on
+     */
+    RuntimeSnapshot getRuntime() {
+        return runtime;
+    }
+
+    /**
+     * Moves the synthesis to another snapshot, because the client of its snapshot has been released.
+     *
+     * @param runtime New snapshot
+     */
+    void bind(RuntimeSnapshot runtime) {
+        this.runtime = runtime;
+    }
+
+    /**
+     * @return Trace of the synthesis, or {@code null} if it is not traced
+     */
+    @Nullable
+    Trace getTrace() {
+        return trace;
+    }
+
+    /**
+     * Starts a span below the span currently entered. Spans of work running on other threads should be started from
+     * an explicit parent instead, see {@link Trace.Span#child(String)}.
+     *
+     * @param name Name of the step
+     * @return Started span, to be closed when the step is done
+     */
+    Trace.Span span(String name) {
+        return current.child(name);
+    }
+
+    /**
+     * Starts a span and enters it, so following spans are recorded below it until {@link #exit(Trace.Span)}.
+     *
+     * @param name Name of the step
+     * @return Started span
+     */
+    Trace.Span enter(String name) {
+        Trace.Span span = current.child(name);
+        current = span;
+        return span;
+    }
+
+    /**
+     * Closes an entered span and returns to its parent.
+     *
+     * @param span Span returned by {@link #enter(String)}
+     */
+    void exit(Trace.Span span) {
+        span.close();
+        Trace.Span parent = span.getParent();
+        if (current == span && parent != null) {
+            current = parent;
+        }
+    }
+
+    /**
+     * @return Scheduler lane of the backend requests
+     */
+    SynthesisScheduler.Lane getLane() {
+        return lane;
+    }
+
+    /**
+     * @return Time left until the deadline, zero if it has passed
+     */
+    Duration getRemaining() {
+        return Duration.ofNanos(Math.max(0, deadlineNanos - System.nanoTime()));
+    }
+
+    /**
+     * @return Time left until the deadline in milliseconds, at least 1 so it can be used as HTTP timeout
+     */
+    int getRemainingMillis() {
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, getRemaining().toMillis()));
+    }
+
+    /**
+     * @return {@code true} if the synthesis has been cancelled
+     */
+    synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Fails if the deadline has passed or the synthesis has been cancelled, so no further requests are started.
+     *
+     * @throws IOException if the synthesis must not continue
+     */
+    void checkActive() throws IOException {
+        if (isCancelled()) {
+            throw new InterruptedIOException("Synthesis was cancelled");
+        }
+        if (deadlineNanos - System.nanoTime() <= 0) {
+            throw new SocketTimeoutException("Synthesis deadline of " + timeout.toMillis() + " ms exceeded");
+        }
+    }
+
+    /**
+     * Registers an action run when the synthesis is cancelled, e.g. aborting an HTTP exchange. It runs immediately if
+     * the synthesis has already been cancelled.
+     *
+     * @param cancellation Action
+     * @return Registration to close when the action is no longer needed
+     */
+    Registration onCancel(Runnable cancellation) {
+        synchronized (this) {
+            if (!cancelled) {
+                cancellations.add(cancellation);
+                return () -> remove(cancellation);
+            }
+        }
+        cancellation.run();
+        return () -> {
+        };
+    }
+
+    /**
+     * Registers a backend request, so it is cancelled with the synthesis.
+     *
+     * @param future Future of the request
+     * @return Registration to close when the request is done
+     */
+    Registration track(Future<?> future) {
+        return onCancel(() -> future.cancel(true));
+    }
+
+    private synchronized void remove(Runnable cancellation) {
+        cancellations.remove(cancellation);
+    }
+
+    /**
+     * Cancels all registered requests and exchanges.
+     */
+    void cancel() {
+        List<Runnable> actions;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            actions = new ArrayList<>(cancellations);
+            cancellations.clear();
+        }
+        actions.forEach(Runnable::run);
+    }
+
+    /**
+     * Waits for a backend request until the deadline. The whole synthesis is cancelled if the deadline expires or the
+     * waiting thread is interrupted.
+     *
+     * @param future Future of the request
+     * @return Result of the request
+     * @throws IOException if the request failed, the deadline expired or the synthesis was cancelled
+     */
+    <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get(getRemaining().toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            cancel();
+            throw new SocketTimeoutException("Synthesis deadline of " + timeout.toMillis() + " ms exceeded");
+        } catch (InterruptedException e) {
+            cancel();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the Coqui backend");
+        } catch (CancellationException e) {
+            throw new InterruptedIOException("Backend request was cancelled");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import java.io.IOException;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * The backend answered, but refused to synthesize the text, e.g. because it is too long or the model failed on it.
+ * <p>
+ * Unlike timeouts, connection failures or an overloaded backend, a rejection is likely to be repeated for the same
+ * text, so only rejections put a text into the {@link NegativeCache}.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+class SynthesisRejectedException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    SynthesisRejectedException(String message) {
+        super(message);
+    }
+
+    /**
+     * @param status HTTP status of a synthesis response
+     * @return {@code true} if the status rejects the text of the request, {@code false} if it reports a problem of
+     *         the backend, its authentication or its load
+     */
+    static boolean isRejection(int status) {
+        switch (status) {
+            case 400: // bad request
+            case 413: // payload too large
+            case 414: // URI too long, the self-hosted server takes the text as query parameter
+            case 422: // unprocessable entity
+            case 500: // the model failed on the text
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,388 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.common.ThreadPoolManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executes backend requests in priority lanes.
+ * <p>
+ * Every request sent to the Coqui backend (one per chunk) is queued in the lane of its caller. Whenever a slot becomes
+ * free, queued interactive work is started before queued background work. The total number of running requests never
+ * exceeds {@code maxConcurrent}, and each lane additionally has its own limit, so bulk jobs can never occupy all slots.
+ * <p>
+ * Requests run either on a pool of the {@link ThreadPoolManager} or, if the JVM supports them, on virtual threads. The
+ * lane limits act as semaphores in both modes, so switching to virtual threads never increases the load on the
+ * backend. Virtual threads only spare the pool threads: the caller of {@link #execute(SynthesisContext, Callable)}
+ * still blocks until its request is done.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+class SynthesisScheduler {
+
+    /**
+     * Priority lanes, in the order they are served.
+     */
+    enum Lane {
+        /**
+         * Announcements somebody is waiting for.
+         */
+        INTERACTIVE,
+        /**
+         * Pre-warming, bulk rendering and other work nobody is waiting for.
+         */
+        BACKGROUND
+    }
+
+    /**
+     * Threads used to execute backend requests.
+     */
+    enum ExecutionMode {
+        PLATFORM,
+        VIRTUAL
+    }
+
+    /**
+     * Own pool, so backend requests never wait behind the tasks of the service that wait for them.
+     */
+    static final String POOL_NAME = CoquiTTSService.SERVICE_ID + "-backend";
+
+    private static final @Nullable Method NEW_VIRTUAL_THREAD_EXECUTOR = findVirtualThreadExecutorFactory();
+
+    private final Logger logger = LoggerFactory.getLogger(SynthesisScheduler.class);
+
+    private final Object lock = new Object();
+    private final Map<Lane, ArrayDeque<FutureTask<?>>> queues = new EnumMap<>(Lane.class);
+    private final Map<Lane, Integer> active = new EnumMap<>(Lane.class);
+    private final Map<Lane, Integer> limits = new EnumMap<>(Lane.class);
+    private final Set<FutureTask<?>> running = new HashSet<>();
+    private final ExecutorService pool = ThreadPoolManager.getPool(POOL_NAME);
+
+    private ExecutorService executor;
+    private ExecutionMode executionMode;
+    private int maxConcurrent;
+    private boolean shutdown;
+
+    /**
+     * Constructor.
+     *
+     * @param maxConcurrent Maximum number of concurrent backend requests over all lanes
+     * @param interactiveLimit Maximum number of concurrent interactive requests
+     * @param backgroundLimit Maximum number of concurrent background requests
+     */
+    SynthesisScheduler(int maxConcurrent, int interactiveLimit, int backgroundLimit) {
+        this(ExecutionMode.PLATFORM, maxConcurrent, interactiveLimit, backgroundLimit);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param executionMode Threads used to execute backend requests
+     * @param maxConcurrent Maximum number of concurrent backend requests over all lanes
+     * @param interactiveLimit Maximum number of concurrent interactive requests
+     * @param backgroundLimit Maximum number of concurrent background requests
+     */
+    SynthesisScheduler(ExecutionMode executionMode, int maxConcurrent, int interactiveLimit, int backgroundLimit) {
+        this.executionMode = supportedMode(executionMode);
+        this.executor = createExecutor(this.executionMode);
+        for (Lane lane : Lane.values()) {
+            queues.put(lane, new ArrayDeque<>());
+            active.put(lane, 0);
+        }
+        setLimits(maxConcurrent, interactiveLimit, backgroundLimit);
+    }
+
+    /**
+     * Changes the concurrency limits. Running requests are not affected.
+     *
+     * @param maxConcurrent Maximum number of concurrent backend requests over all lanes
+     * @param interactiveLimit Maximum number of concurrent interactive requests
+     * @param backgroundLimit Maximum number of concurrent background requests
+     */
+    void setLimits(int maxConcurrent, int interactiveLimit, int backgroundLimit) {
+        synchronized (lock) {
+            this.maxConcurrent = Math.max(1, maxConcurrent);
+            limits.put(Lane.INTERACTIVE, Math.max(1, interactiveLimit));
+            limits.put(Lane.BACKGROUND, Math.max(1, backgroundLimit));
+            logger.debug("Scheduler limits: total={}, interactive={}, background={}", this.maxConcurrent,
+                    limits.get(Lane.INTERACTIVE), limits.get(Lane.BACKGROUND));
+            dispatch();
+        }
+    }
+
+    /**
+     * Switches the threads used for backend requests. Running requests finish on their current thread.
+     *
+     * @param mode Requested execution mode, falls back to platform threads if virtual threads are not supported
+     */
+    void setExecutionMode(ExecutionMode mode) {
+        ExecutorService old;
+        synchronized (lock) {
+            ExecutionMode newMode = supportedMode(mode);
+            if (newMode == executionMode || shutdown) {
+                return;
+            }
+            old = executor;
+            executor = createExecutor(newMode);
+            executionMode = newMode;
+            logger.debug("Backend requests are now executed on {} threads", newMode);
+        }
+        release(old);
+    }
+
+    /**
+     * @return Threads currently used to execute backend requests
+     */
+    ExecutionMode getExecutionMode() {
+        synchronized (lock) {
+            return executionMode;
+        }
+    }
+
+    /**
+     * @return {@code true} if the JVM supports virtual threads
+     */
+    static boolean isVirtualThreadSupported() {
+        return NEW_VIRTUAL_THREAD_EXECUTOR != null;
+    }
+
+    /**
+     * Queues a backend request.
+     *
+     * @param lane Lane of the request
+     * @param task Backend request
+     * @return Future of the result
+     */
+    <T> Future<T> submit(Lane lane, Callable<T> task) {
+        FutureTask<T> future = new FutureTask<>(task);
+        synchronized (lock) {
+            if (shutdown) {
+                throw new RejectedExecutionException("Synthesis scheduler has been shut down");
+            }
+            queues.get(lane).add(future);
+            if (logger.isTraceEnabled()) {
+                logger.trace("Queued {} request, queue depth interactive={}, background={}", lane,
+                        queues.get(Lane.INTERACTIVE).size(), queues.get(Lane.BACKGROUND).size());
+            }
+            dispatch();
+        }
+        return future;
+    }
+
+    /**
+     * Queues a backend request and waits for its result.
+     *
+     * @param lane Lane of the request
+     * @param task Backend request
+     * @return Result of the request
+     * @throws IOException if the request failed or the calling thread was interrupted
+     */
+    <T> T execute(Lane lane, Callable<T> task) throws IOException {
+        return await(submit(lane, task));
+    }
+
+    /**
+     * Queues a backend request of a synthesis and waits for its result until the deadline of the synthesis.
+     *
+     * @param context Synthesis the request belongs to
+     * @param task Backend request
+     * @return Result of the request
+     * @throws IOException if the request failed, the deadline expired or the synthesis was cancelled
+     */
+    <T> T execute(SynthesisContext context, Callable<T> task) throws IOException {
+        context.checkActive();
+        Future<T> future = submit(context.getLane(), task);
+        try (SynthesisContext.Registration registration = context.track(future)) {
+            return context.await(future);
+        }
+    }
+
+    /**
+     * Waits for a request queued by {@link #submit(Lane, Callable)}. The request is cancelled if the waiting thread is
+     * interrupted.
+     *
+     * @param future Future of the request
+     * @return Result of the request
+     * @throws IOException if the request failed or the calling thread was interrupted
+     */
+    static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the Coqui backend");
+        } catch (CancellationException e) {
+            throw new InterruptedIOException("Backend request was cancelled");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * @param lane Lane
+     * @return Number of requests waiting for a free slot in the lane
+     */
+    int getQueueDepth(Lane lane) {
+        synchronized (lock) {
+            // cancelled requests stay queued until they would be dispatched
+            return (int) queues.get(lane).stream().filter(t -> !t.isCancelled()).count();
+        }
+    }
+
+    /**
+     * @param lane Lane
+     * @return Number of running requests of the lane
+     */
+    int getActiveCount(Lane lane) {
+        synchronized (lock) {
+            return active.get(lane);
+        }
+    }
+
+    /**
+     * Cancels all queued requests and interrupts the running ones.
+     */
+    void shutdown() {
+        synchronized (lock) {
+            shutdown = true;
+            for (ArrayDeque<FutureTask<?>> queue : queues.values()) {
+                queue.forEach(f -> f.cancel(false));
+                queue.clear();
+            }
+            running.forEach(f -> f.cancel(true));
+        }
+        release(executor);
+    }
+
+    private ExecutionMode supportedMode(ExecutionMode mode) {
+        if (mode == ExecutionMode.VIRTUAL && !isVirtualThreadSupported()) {
+            logger.warn("Virtual threads are not supported by this JVM, using platform threads.");
+            return ExecutionMode.PLATFORM;
+        }
+        return mode;
+    }
+
+    private ExecutorService createExecutor(ExecutionMode mode) {
+        Method factory = NEW_VIRTUAL_THREAD_EXECUTOR;
+        if (mode == ExecutionMode.VIRTUAL && factory != null) {
+            try {
+                return (ExecutorService) factory.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                logger.warn("Could not create virtual thread executor, using platform threads: {}", e.getMessage());
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * Stops a virtual thread executor once its requests are done. The pool of the {@link ThreadPoolManager} is shared
+     * and must stay usable.
+     */
+    private void release(ExecutorService old) {
+        if (old != pool) {
+            old.shutdown();
+        }
+    }
+
+    /**
+     * Virtual threads are looked up reflectively so the add-on keeps running on Java 17.
+     */
+    private static @Nullable Method findVirtualThreadExecutorFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Starts as many queued requests as the limits allow, interactive ones first. Must be called holding the lock.
+     */
+    private void dispatch() {
+        while (!shutdown && totalActive() < maxConcurrent) {
+            Lane next = null;
+            for (Lane lane : Lane.values()) {
+                if (!queues.get(lane).isEmpty() && active.get(lane) < limits.get(lane)) {
+                    next = lane;
+                    break;
+                }
+            }
+            if (next == null) {
+                return;
+            }
+            FutureTask<?> task = queues.get(next).poll();
+            if (task == null || task.isCancelled()) {
+                continue;
+            }
+            Lane lane = next;
+            active.merge(lane, 1, Integer::sum);
+            running.add(task);
+            try {
+                executor.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        release(lane, task);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                active.merge(lane, -1, Integer::sum);
+                running.remove(task);
+                task.cancel(false);
+            }
+        }
+    }
+
+    private void release(Lane lane, FutureTask<?> task) {
+        synchronized (lock) {
+            active.merge(lane, -1, Integer::sum);
+            running.remove(task);
+            dispatch();
+        }
+    }
+
+    private int totalActive() {
+        int sum = 0;
+        for (int count : active.values()) {
+            sum += count;
+        }
+        return sum;
+    }
+}
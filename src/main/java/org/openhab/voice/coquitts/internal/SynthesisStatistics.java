@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * Counters of where syntheses were served from, and latencies of the backends.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+class SynthesisStatistics {
+
+    private static final int LATENCY_SAMPLES = 1024;
+
+    /**
+     * Where a synthesis was served from.
+     */
+    enum Source {
+        LOCAL_CACHE,
+        BUNDLE,
+        SHARED_CACHE,
+        BACKEND,
+        BACKED_OFF,
+        FAILED,
+        /**
+         * Answered from the cache in degraded mode after the backend failed
+         */
+        DEGRADED
+    }
+
+    /**
+     * Latencies of the most recent requests of one backend.
+     */
+    private static class LatencyWindow {
+        final long[] samples = new long[LATENCY_SAMPLES];
+        long count;
+
+        synchronized void add(long millis) {
+            samples[(int) (count++ % LATENCY_SAMPLES)] = millis;
+        }
+
+        synchronized long[] sorted() {
+            long[] sorted = Arrays.copyOf(samples, (int) Math.min(count, LATENCY_SAMPLES));
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+
+    private final Map<Source, LongAdder> counters = new EnumMap<>(Source.class);
+    private final Map<String, LatencyWindow> latencies = new LinkedHashMap<>();
+
+    SynthesisStatistics() {
+        for (Source source : Source.values()) {
+            counters.put(source, new LongAdder());
+        }
+    }
+
+    /**
+     * @param source Where a synthesis was served from
+     */
+    void record(Source source) {
+        counters.get(source).increment();
+    }
+
+    /**
+     * @param backend Name of the backend
+     * @param millis Latency of one backend request
+     */
+    void recordLatency(String backend, long millis) {
+        LatencyWindow window;
+        synchronized (latencies) {
+            window = latencies.computeIfAbsent(backend, b -> new LatencyWindow());
+        }
+        window.add(millis);
+    }
+
+    /**
+     * @param source Where syntheses were served from
+     * @return Number of syntheses served from the source
+     */
+    long getCount(Source source) {
+        return counters.get(source).sum();
+    }
+
+    /**
+     * @return Share of the syntheses served without calling the backend, 0 if there were none
+     */
+    double getHitRatio() {
+        long hits = getCount(Source.LOCAL_CACHE) + getCount(Source.BUNDLE) + getCount(Source.SHARED_CACHE);
+        long total = 0;
+        for (Source source : Source.values()) {
+            total += getCount(source);
+        }
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * @return Latency percentiles of the recent requests per backend, like "p50=120 ms, p99=800 ms (1024 samples)"
+     */
+    Map<String, String> getLatencies() {
+        Map<String, String> result = new LinkedHashMap<>();
+        synchronized (latencies) {
+            latencies.forEach((backend, window) -> {
+                long[] sorted = window.sorted();
+                result.put(backend, sorted.length == 0 ? "no requests"
+                        : String.format("p50=%d ms, p99=%d ms (%d samples)", percentile(sorted, 50),
+                                percentile(sorted, 99), sorted.length));
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Resets all counters and latencies.
+     */
+    void reset() {
+        counters.values().forEach(LongAdder::reset);
+        synchronized (latencies) {
+            latencies.clear();
+        }
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
@@ -1,15 +1,33 @@
 package org.openhab.voice.coquitts.internal;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.net.Socket;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.util.InputStreamResponseListener;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.http.HttpURI;
+import org.openhab.core.io.net.http.HttpClientFactory;
 import org.openhab.core.io.net.http.HttpRequestBuilder;
-import org.openhab.core.io.net.http.HttpUtil;
-import org.openhab.core.library.types.RawType;
 import org.openhab.voice.coquitts.internal.dto.CoquiTTSSpeaker;
 import org.openhab.voice.coquitts.internal.dto.CoquiTTSVoice;
 import org.slf4j.Logger;
@@ -19,14 +37,31 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
 public class TTSClient implements ICoquiTTSClient {
+    /**
+     * Key and value cells of the rows of the CLI argument, model and vocoder tables on the details page
+     */
+    private static final Pattern DETAILS_ROW = Pattern
+            .compile("<tr>\\s*<td>\\s*([^<]*?)\\s*</td>\\s*<td>\\s*([^<]*?)\\s*</td>\\s*</tr>");
+
+    /**
+     * Rows identifying the model and vocoder, unlike e.g. the port or the template markup
+     */
+    private static final Set<String> IDENTITY_FIELDS = Set.of("model_name", "model_path", "vocoder_name",
+            "vocoder_path", "model", "run_name");
+
     private final HttpURI BASE_URL;
     private final Gson gson = new GsonBuilder().create();
     private final Logger logger = LoggerFactory.getLogger(TTSClient.class);
+    private final HttpClientFactory clientFactory;
+    private final SynthesisScheduler scheduler;
+    private volatile boolean identityMissingReported;
 
-    public TTSClient(String hostname, Integer port) {
+    public TTSClient(String hostname, Integer port, HttpClientFactory clientFactory, SynthesisScheduler scheduler) {
         // TODO: parse hostname for http or https or force in config. also use config as an input?
         // or throw exception on split > 1 for on /
         BASE_URL = HttpURI.createHttpURI("http", hostname, port, null, null, null, null);
+        this.clientFactory = clientFactory;
+        this.scheduler = scheduler;
         logger.info("object Created");
     }
 
@@ -45,9 +80,46 @@ public class TTSClient implements ICoquiTTSClient {
     }
 
     @Override
-    public byte[] synthesize(String text, CoquiTTSVoice voice) throws IOException {
-        logger.debug(String.format("Request to synthesize speach from private instance for text [{}] with voice {}",
-                text, voice.getLabel()));
+    public void probe(int timeoutMillis) throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(BASE_URL.getHost(), BASE_URL.getPort()), timeoutMillis);
+        }
+    }
+
+    @Override
+    public String getBackendIdentity() throws IOException {
+        // the server does not report a model version, its details page lists the model and vocoder names if it was
+        // started with --show_details; the speakers are left out, so adding one keeps the cache
+        String details = sendGetRequest("/details");
+        StringBuilder identity = new StringBuilder();
+        Matcher row = DETAILS_ROW.matcher(details == null ? "" : details);
+        while (row.find()) {
+            if (IDENTITY_FIELDS.contains(row.group(1)) && !row.group(2).isEmpty() && !"None".equals(row.group(2))) {
+                identity.append(row.group(1)).append('=').append(row.group(2)).append('\n');
+            }
+        }
+        if (identity.length() == 0) {
+            String message = "The server at " + BASE_URL
+                    + " does not report its model, start it with --show_details true or set a cache namespace";
+            if (!identityMissingReported) {
+                identityMissingReported = true;
+                logger.warn("{}", message);
+            }
+            throw new IOException(message);
+        }
+        try {
+            MessageDigest md = MessageDigest.getInstance("MD5");
+            byte[] digest = md.digest(identity.toString().getBytes(StandardCharsets.UTF_8));
+            return "coqui-server-" + String.format("%032x", new BigInteger(1, digest));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public byte[] synthesize(String text, CoquiTTSVoice voice, SynthesisContext context) throws IOException {
+        logger.debug("Request to synthesize speech from private instance for text [{}] with voice {}", text,
+                voice.getLabel());
         HttpURI uu = new HttpURI(BASE_URL);
         uu.setPath(uu.getPath() != null ? uu.getPath() : "" + "/api/tts");
         String speakerId = (!voice.getSpeakerId().equals(CoquiAPI.DEFAULT_VOICE_ID)) ? voice.getSpeakerId() : "";
@@ -57,21 +129,51 @@ public class TTSClient implements ICoquiTTSClient {
                 URLEncoder.encode(languageId, java.nio.charset.StandardCharsets.UTF_8),
                 URLEncoder.encode(text, java.nio.charset.StandardCharsets.UTF_8)));
 
-        // TODO: implement larger buffer fix as is in the coqui ai tts client
-        HttpRequestBuilder builder = HttpRequestBuilder.getFrom(uu.toString());
-        RawType r = HttpUtil.downloadData(uu.toString(), null, false, -1, 10000);
-        return r.getBytes();
+        String url = uu.toString();
+        try (Trace.Span span = context.span("request")) {
+            return scheduler.execute(context, () -> download(url, context));
+        }
+    }
+
+    /**
+     * Streams the audio of a synthesis request. The status of the response tells a rejected text from a failing
+     * server.
+     */
+    private byte[] download(String url, SynthesisContext context) throws IOException {
+        Request request = clientFactory.getCommonHttpClient().newRequest(url)
+                .timeout(context.getRemainingMillis(), TimeUnit.MILLISECONDS);
+        InputStreamResponseListener listener = new InputStreamResponseListener();
+        try (SynthesisContext.Registration abort = context
+                .onCancel(() -> request.abort(new InterruptedIOException("Synthesis was cancelled")))) {
+            request.send(listener);
+            Response response = listener.get(context.getRemainingMillis(), TimeUnit.MILLISECONDS);
+            int status = response.getStatus();
+            if (status != HttpStatus.OK_200) {
+                request.abort(new IOException("Unexpected status " + status));
+                String message = "Synthesis failed with status " + status + " from " + BASE_URL;
+                throw SynthesisRejectedException.isRejection(status) ? new SynthesisRejectedException(message)
+                        : new IOException(message);
+            }
+            long contentLength = response.getHeaders().getLongField(HttpHeader.CONTENT_LENGTH.asString());
+            try (InputStream in = listener.getInputStream()) {
+                return WaveUtils.assemble(List.of(WaveUtils.readPcm(in, contentLength)));
+            }
+        } catch (InterruptedException e) {
+            request.abort(e);
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException | TimeoutException e) {
+            request.abort(e);
+            throw new IOException(e);
+        }
     }
 
     private String sendGetRequest(String endpoint) throws IOException {
         String url = BASE_URL.toString() + endpoint;
-        HttpRequestBuilder builder = HttpRequestBuilder.getFrom(url);
         try {
-            String response = builder.getContentAsString();
-            return response;
-        } catch (Exception e) {
-            // TODO: get actual exceptions
-            System.out.println(e.getMessage());
+            return HttpRequestBuilder.getFrom(url).getContentAsString();
+        } catch (IOException e) {
+            logger.debug("GET {} failed: {}", url, e.getMessage());
             throw e;
         }
     }
@@ -0,0 +1,259 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * Brings equivalent texts into one canonical form before they are cached and synthesized.
+ * <p>
+ * "Door open", "door open." and "Door  open" all become "Door open.", so they share one cache entry. Numbers and units
+ * can optionally be spelled out for English voices, so "21.5&deg;C" and "21.5 &deg;C" share one entry as well. The
+ * canonical form is also the text sent to the backend, so the rewriting is off unless enabled, and disabled
+ * normalization only trims the text.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+class TextNormalizer {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern SPACE_BEFORE_PUNCTUATION = Pattern.compile(" +([.,;:!?])");
+    private static final Pattern REPEATED_PUNCTUATION = Pattern.compile("([,;:!?])\\1+");
+    private static final Pattern THOUSANDS_SEPARATOR = Pattern.compile("(?<=\\d),(?=\\d{3}\\b)");
+    private static final Pattern NUMBER_WITH_UNIT = Pattern
+            .compile("(?<![\\w.])(-?\\d+(?:\\.\\d+)?)\\s?(\u00b0C|\u00b0F|\u00b0|%|kWh|kW|km/h|mph|hPa|mm|cm|km|kg|m|g|W|V|A)?(?![\\w\u00b0]|\\.\\d)");
+
+    private static final String[] ONES = { "zero", "one", "two", "three", "four", "five", "six", "seven", "eight",
+            "nine", "ten", "eleven", "twelve", "thirteen", "fourteen", "fifteen", "sixteen", "seventeen", "eighteen",
+            "nineteen" };
+    private static final String[] TENS = { "", "", "twenty", "thirty", "forty", "fifty", "sixty", "seventy",
+            "eighty", "ninety" };
+    private static final String[] SCALES = { "", " thousand", " million", " billion", " trillion" };
+
+    private static final Map<String, String> UNITS = new LinkedHashMap<>();
+    static {
+        UNITS.put("\u00b0C", "degrees Celsius");
+        UNITS.put("\u00b0F", "degrees Fahrenheit");
+        UNITS.put("\u00b0", "degrees");
+        UNITS.put("%", "percent");
+        UNITS.put("kWh", "kilowatt hours");
+        UNITS.put("kW", "kilowatts");
+        UNITS.put("km/h", "kilometers per hour");
+        UNITS.put("mph", "miles per hour");
+        UNITS.put("hPa", "hectopascals");
+        UNITS.put("mm", "millimeters");
+        UNITS.put("cm", "centimeters");
+        UNITS.put("km", "kilometers");
+        UNITS.put("kg", "kilograms");
+        UNITS.put("m", "meters");
+        UNITS.put("g", "grams");
+        UNITS.put("W", "watts");
+        UNITS.put("V", "volts");
+        UNITS.put("A", "amperes");
+    }
+
+    private final boolean enabled;
+    private final boolean spellOutNumbers;
+
+    /**
+     * @param enabled Whether texts are normalized at all
+     * @param spellOutNumbers Whether numbers and units of English texts are spelled out
+     */
+    TextNormalizer(boolean enabled, boolean spellOutNumbers) {
+        this.enabled = enabled;
+        this.spellOutNumbers = spellOutNumbers;
+    }
+
+    /**
+     * Normalizes a complete utterance: the first letter is capitalized and a missing final punctuation mark is added.
+     *
+     * @param text Text to normalize
+     * @param locale Locale of the voice speaking the text
+     * @return Canonical form of the text
+     */
+    String normalize(String text, Locale locale) {
+        String result = normalizeFragment(text, locale);
+        if (!enabled || result.isEmpty()) {
+            return result;
+        }
+        char last = result.charAt(result.length() - 1);
+        if (last != '.' && last != '!' && last != '?') {
+            result = stripTrailing(result, ",;:") + ".";
+        }
+        return Character.toUpperCase(result.charAt(0)) + result.substring(1);
+    }
+
+    /**
+     * Normalizes part of an utterance: whitespace, quotes and punctuation are unified, but the text is neither
+     * capitalized nor terminated.
+     *
+     * @param text Text to normalize
+     * @param locale Locale of the voice speaking the text
+     * @return Canonical form of the text
+     */
+    String normalizeFragment(String text, Locale locale) {
+        if (!enabled) {
+            return text.trim();
+        }
+        String result = unifyCharacters(text);
+        result = WHITESPACE.matcher(result).replaceAll(" ").trim();
+        // numbers and units are only known in English words
+        if (spellOutNumbers && Locale.ENGLISH.getLanguage().equals(locale.getLanguage())) {
+            result = spellOutNumbers(result);
+        }
+        result = SPACE_BEFORE_PUNCTUATION.matcher(result).replaceAll("$1");
+        result = REPEATED_PUNCTUATION.matcher(result).replaceAll("$1");
+        return result;
+    }
+
+    private static String unifyCharacters(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\u2018': // left single quotation mark
+                case '\u2019': // right single quotation mark
+                case '\u201a': // single low-9 quotation mark
+                case '\u201b': // single high-reversed-9 quotation mark
+                case '\u2032': // prime
+                case '`':
+                case '\u00b4': // acute accent
+                    sb.append('\'');
+                    break;
+                case '\u201c': // left double quotation mark
+                case '\u201d': // right double quotation mark
+                case '\u201e': // double low-9 quotation mark
+                case '\u00ab': // left guillemet
+                case '\u00bb': // right guillemet
+                    sb.append('"');
+                    break;
+                case '\u2013': // en dash
+                case '\u2014': // em dash
+                case '\u2212': // minus sign
+                    sb.append('-');
+                    break;
+                case '\u2026': // ellipsis
+                    sb.append("...");
+                    break;
+                case '\u00a0': // no-break space
+                case '\u202f': // narrow no-break space
+                    sb.append(' ');
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String stripTrailing(String text, String characters) {
+        int end = text.length();
+        while (end > 0 && characters.indexOf(text.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        return text.substring(0, end);
+    }
+
+    private static String spellOutNumbers(String text) {
+        String withoutSeparators = THOUSANDS_SEPARATOR.matcher(text).replaceAll("");
+        Matcher matcher = NUMBER_WITH_UNIT.matcher(withoutSeparators);
+        StringBuilder sb = new StringBuilder();
+        while (matcher.find()) {
+            String words = numberToWords(matcher.group(1));
+            String unit = matcher.group(2);
+            if (unit != null) {
+                words = words + " " + UNITS.get(unit);
+            }
+            matcher.appendReplacement(sb, Matcher.quoteReplacement(words));
+        }
+        matcher.appendTail(sb);
+        return sb.toString();
+    }
+
+    /**
+     * Spells out a decimal number like "-21.5" as "minus twenty-one point five".
+     */
+    static String numberToWords(String number) {
+        StringBuilder sb = new StringBuilder();
+        String digits = number;
+        if (digits.startsWith("-")) {
+            sb.append("minus ");
+            digits = digits.substring(1);
+        }
+        int point = digits.indexOf('.');
+        String integerPart = point < 0 ? digits : digits.substring(0, point);
+        if (integerPart.length() > 15) {
+            // too large to be read as a number, read digit by digit
+            for (char c : integerPart.toCharArray()) {
+                sb.append(ONES[c - '0']).append(' ');
+            }
+            sb.setLength(sb.length() - 1);
+        } else {
+            sb.append(integerToWords(Long.parseLong(integerPart)));
+        }
+        if (point >= 0) {
+            sb.append(" point");
+            for (char c : digits.substring(point + 1).toCharArray()) {
+                sb.append(' ').append(ONES[c - '0']);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String integerToWords(long value) {
+        if (value == 0) {
+            return ONES[0];
+        }
+        StringBuilder sb = new StringBuilder();
+        long remaining = value;
+        int scale = 0;
+        while (remaining > 0) {
+            int group = (int) (remaining % 1000);
+            if (group > 0) {
+                String words = groupToWords(group) + SCALES[scale];
+                sb.insert(0, sb.length() > 0 ? words + " " : words);
+            }
+            remaining /= 1000;
+            scale++;
+        }
+        return sb.toString();
+    }
+
+    private static String groupToWords(int group) {
+        StringBuilder sb = new StringBuilder();
+        int hundreds = group / 100;
+        int rest = group % 100;
+        if (hundreds > 0) {
+            sb.append(ONES[hundreds]).append(" hundred");
+            if (rest > 0) {
+                sb.append(" and ");
+            }
+        }
+        if (rest >= 20) {
+            sb.append(TENS[rest / 10]);
+            if (rest % 10 > 0) {
+                sb.append('-').append(ONES[rest % 10]);
+            }
+        } else if (rest > 0 || hundreds == 0) {
+            sb.append(ONES[rest]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Timeline of one synthesis as a tree of spans.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+class Trace {
+
+    /**
+     * Span that records nothing, used when tracing is disabled.
+     */
+    static final Span NOOP = new Span(null, "noop", 0) {
+        @Override
+        Span child(String name) {
+            return this;
+        }
+
+        @Override
+        void setDetail(String detail) {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    /**
+     * One step of a synthesis. Closing a span also closes its open children, e.g. after a failed request, closing it
+     * again has no effect.
+     */
+    static class Span implements AutoCloseable {
+        private final @Nullable Span parent;
+        private final String name;
+        private final long startNanos;
+        private volatile long endNanos;
+        private volatile @Nullable String detail;
+        private final List<Span> children = new ArrayList<>();
+
+        private Span(@Nullable Span parent, String name, long startNanos) {
+            this.parent = parent;
+            this.name = name;
+            this.startNanos = startNanos;
+        }
+
+        /**
+         * Starts a child span.
+         *
+         * @param name Name of the step
+         * @return Started span
+         */
+        Span child(String name) {
+            Span child = new Span(this, name, System.nanoTime());
+            synchronized (children) {
+                children.add(child);
+            }
+            return child;
+        }
+
+        /**
+         * @param detail Additional information, e.g. the outcome of the step
+         */
+        void setDetail(String detail) {
+            this.detail = detail;
+        }
+
+        @Nullable
+        Span getParent() {
+            return parent;
+        }
+
+        @Override
+        public void close() {
+            if (endNanos != 0) {
+                return;
+            }
+            synchronized (children) {
+                children.forEach(Span::close);
+            }
+            endNanos = System.nanoTime();
+        }
+
+        private long durationNanos() {
+            return (endNanos == 0 ? System.nanoTime() : endNanos) - startNanos;
+        }
+
+        private Map<String, Object> toMap(long traceStart) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("name", name);
+            map.put("startMs", TimeUnit.NANOSECONDS.toMillis(startNanos - traceStart));
+            map.put("durationMs", TimeUnit.NANOSECONDS.toMillis(durationNanos()));
+            String currentDetail = detail;
+            if (currentDetail != null) {
+                map.put("detail", currentDetail);
+            }
+            List<Map<String, Object>> childMaps = new ArrayList<>();
+            synchronized (children) {
+                children.forEach(c -> childMaps.add(c.toMap(traceStart)));
+            }
+            if (!childMaps.isEmpty()) {
+                map.put("children", childMaps);
+            }
+            return map;
+        }
+
+        private void print(StringBuilder sb, String indent, long traceStart) {
+            String label = indent + name;
+            if (label.length() > 32) {
+                label = label.substring(0, 31) + "\u2026";
+            }
+            sb.append(String.format("%-32s +%5d ms %6d ms", label,
+                    TimeUnit.NANOSECONDS.toMillis(startNanos - traceStart),
+                    TimeUnit.NANOSECONDS.toMillis(durationNanos())));
+            String currentDetail = detail;
+            if (currentDetail != null) {
+                sb.append("  ").append(currentDetail);
+            }
+            sb.append('\n');
+            synchronized (children) {
+                children.forEach(c -> c.print(sb, indent + "  ", traceStart));
+            }
+        }
+    }
+
+    private final Instant started = Instant.now();
+    private final Span root;
+
+    /**
+     * Starts a trace.
+     *
+     * @param name Name of the root span, e.g. the synthesized text
+     */
+    Trace(String name) {
+        this.root = new Span(null, name, System.nanoTime());
+    }
+
+    /**
+     * @return Root span
+     */
+    Span getRoot() {
+        return root;
+    }
+
+    /**
+     * @return Duration of the trace in milliseconds, up to now if it is still running
+     */
+    long getDurationMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(root.durationNanos());
+    }
+
+    /**
+     * @return Trace as nested maps, for serialization to JSON
+     */
+    Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("started", started.toString());
+        map.putAll(root.toMap(root.startNanos));
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(started.toString()).append('\n');
+        root.print(sb, "", root.startNanos);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * Keeps the most recent traces in a ring buffer and dumps slow ones to the log or a JSON lines file.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+class TraceRecorder {
+
+    static final int CAPACITY = 100;
+
+    private final Logger logger = LoggerFactory.getLogger(TraceRecorder.class);
+    private final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+
+    private final ArrayDeque<Trace> traces = new ArrayDeque<>(CAPACITY);
+
+    private volatile boolean enabled;
+    private volatile long slowThresholdMillis;
+    private volatile @Nullable File dumpFile;
+
+    /**
+     * Configures the recorder.
+     *
+     * @param enabled Record traces
+     * @param slowThresholdMillis Traces taking longer are dumped
+     * @param dumpFile File slow traces are appended to as JSON lines, or {@code null} to log them
+     */
+    void configure(boolean enabled, long slowThresholdMillis, @Nullable File dumpFile) {
+        this.enabled = enabled;
+        this.slowThresholdMillis = slowThresholdMillis;
+        this.dumpFile = dumpFile;
+        if (!enabled) {
+            synchronized (traces) {
+                traces.clear();
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} if traces are recorded
+     */
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Records a finished trace and dumps it if it was slow.
+     *
+     * @param trace Finished trace
+     */
+    void record(Trace trace) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (traces) {
+            if (traces.size() == CAPACITY) {
+                traces.removeFirst();
+            }
+            traces.addLast(trace);
+        }
+        if (trace.getDurationMillis() >= slowThresholdMillis) {
+            dump(trace);
+        }
+    }
+
+    /**
+     * @param limit Maximum number of traces
+     * @return Most recent traces, newest first
+     */
+    List<Trace> getRecent(int limit) {
+        List<Trace> recent = new ArrayList<>();
+        synchronized (traces) {
+            traces.descendingIterator().forEachRemaining(t -> {
+                if (recent.size() < limit) {
+                    recent.add(t);
+                }
+            });
+        }
+        return recent;
+    }
+
+    private void dump(Trace trace) {
+        File file = dumpFile;
+        if (file == null) {
+            logger.info("Slow synthesis took {} ms:\n{}", trace.getDurationMillis(), trace);
+            return;
+        }
+        try {
+            Files.write(file.toPath(), (gson.toJson(trace.toMap()) + "\n").getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            logger.warn("Could not write trace to {}: {}", file, e.getMessage());
+        }
+    }
+}
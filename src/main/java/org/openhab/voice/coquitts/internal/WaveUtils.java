@@ -0,0 +1,230 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * Helpers for WAV audio.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+final class WaveUtils {
+
+    private static final int RIFF = 0x46464952; // "RIFF"
+    private static final int WAVE = 0x45564157; // "WAVE"
+    private static final int FMT = 0x20746d66; // "fmt "
+    private static final int DATA = 0x61746164; // "data"
+    private static final int HEADER_SIZE = 44;
+    private static final long STREAMED_SIZE = 0xFFFFFFFFL;
+
+    /**
+     * Maximum size of the PCM data of a clip, the limit the responses of the backend were buffered with before
+     */
+    static final int MAX_PCM_SIZE = 20000 * 1024;
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int POOLED_BUFFERS = 16;
+    private static final int INITIAL_DATA_SIZE = 64 * 1024;
+
+    /**
+     * Copy buffers shared by all downloads, so streaming a clip does not allocate per request
+     */
+    private static final BlockingQueue<byte[]> BUFFER_POOL = new ArrayBlockingQueue<>(POOLED_BUFFERS);
+
+    /**
+     * PCM audio of a WAV clip without its header.
+     */
+    static class Pcm {
+        /**
+         * Content of the "fmt " chunk
+         */
+        final byte[] format;
+        final byte[] data;
+        final int length;
+
+        Pcm(byte[] format, byte[] data, int length) {
+            this.format = format;
+            this.data = data;
+            this.length = length;
+        }
+    }
+
+    private WaveUtils() {
+    }
+
+    /**
+     * Splices WAV clips into one WAV clip.
+     *
+     * @param clips WAV clips, all in the same audio format
+     * @return WAV clip containing the audio of all clips in order
+     * @throws IOException if a clip is not a WAV clip or the formats differ
+     */
+    static byte[] concatenate(List<byte[]> clips) throws IOException {
+        if (clips.size() == 1) {
+            return clips.get(0);
+        }
+        List<Pcm> pcm = new ArrayList<>();
+        for (byte[] clip : clips) {
+            pcm.add(readPcm(new ByteArrayInputStream(clip), clip.length));
+        }
+        return assemble(pcm);
+    }
+
+    /**
+     * Streams a WAV clip and keeps only its PCM data. Chunks other than "fmt " and "data" are skipped while reading.
+     *
+     * @param in WAV stream
+     * @param expectedSize Size of the stream if known, e.g. from the content length, or -1
+     * @return PCM data and format of the clip
+     * @throws IOException if the stream could not be read, is not a WAV stream or its PCM data exceeds
+     *             {@link #MAX_PCM_SIZE}
+     */
+    static Pcm readPcm(InputStream in, long expectedSize) throws IOException {
+        byte[] buffer = borrowBuffer();
+        try {
+            ByteBuffer header = ByteBuffer.wrap(buffer, 0, 12).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(in, buffer, 12);
+            if (header.getInt(0) != RIFF || header.getInt(8) != WAVE) {
+                throw new IOException("Not a WAV stream");
+            }
+            byte[] format = null;
+            while (true) {
+                readFully(in, buffer, 8);
+                int id = header.getInt(0);
+                long size = Integer.toUnsignedLong(header.getInt(4));
+                if (id == FMT) {
+                    format = new byte[(int) size];
+                    readFully(in, format, format.length);
+                    skip(in, size % 2);
+                } else if (id == DATA) {
+                    if (format == null) {
+                        throw new IOException("WAV stream without format");
+                    }
+                    return readData(in, format, size, expectedSize, buffer);
+                } else {
+                    skip(in, size + size % 2);
+                }
+            }
+        } finally {
+            BUFFER_POOL.offer(buffer);
+        }
+    }
+
+    private static Pcm readData(InputStream in, byte[] format, long size, long expectedSize, byte[] buffer)
+            throws IOException {
+        boolean streamed = size == STREAMED_SIZE || size == 0;
+        if (!streamed && size > MAX_PCM_SIZE) {
+            throw new IOException("WAV stream too large: " + size + " bytes");
+        }
+        int capacity = !streamed ? (int) size
+                : expectedSize > HEADER_SIZE && expectedSize - HEADER_SIZE <= MAX_PCM_SIZE
+                        ? (int) expectedSize - HEADER_SIZE
+                        : INITIAL_DATA_SIZE;
+        byte[] data = new byte[capacity];
+        int length = 0;
+        long remaining = streamed ? Long.MAX_VALUE : size;
+        while (remaining > 0) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read < 0) {
+                if (!streamed) {
+                    throw new EOFException("WAV stream ended after " + length + " of " + size + " bytes");
+                }
+                break;
+            }
+            if (length + read > data.length) {
+                // streamed data has no size, stop before it exhausts the memory
+                if (length + read > MAX_PCM_SIZE) {
+                    throw new IOException("WAV stream too large: more than " + MAX_PCM_SIZE + " bytes");
+                }
+                data = Arrays.copyOf(data, Math.min(MAX_PCM_SIZE, Math.max(length + read, data.length * 2)));
+            }
+            System.arraycopy(buffer, 0, data, length, read);
+            length += read;
+            remaining -= read;
+        }
+        return new Pcm(format, data, length);
+    }
+
+    /**
+     * Writes PCM clips of the same format into one WAV clip, allocating the result once.
+     *
+     * @param clips PCM clips
+     * @return WAV clip containing the audio of all clips in order
+     * @throws IOException if there are no clips or their formats differ
+     */
+    static byte[] assemble(List<Pcm> clips) throws IOException {
+        if (clips.isEmpty()) {
+            throw new IOException("Nothing to assemble");
+        }
+        byte[] format = clips.get(0).format;
+        long dataSize = 0;
+        for (Pcm clip : clips) {
+            if (!Arrays.equals(format, clip.format)) {
+                throw new IOException("Cannot assemble clips of different formats");
+            }
+            dataSize += clip.length;
+        }
+        long total = 20L + format.length + 8 + dataSize;
+        if (total > Integer.MAX_VALUE) {
+            throw new IOException("Assembled clip too large");
+        }
+        ByteBuffer wav = ByteBuffer.allocate((int) total).order(ByteOrder.LITTLE_ENDIAN);
+        wav.putInt(RIFF).putInt((int) total - 8).putInt(WAVE);
+        wav.putInt(FMT).putInt(format.length).put(format);
+        wav.putInt(DATA).putInt((int) dataSize);
+        for (Pcm clip : clips) {
+            wav.put(clip.data, 0, clip.length);
+        }
+        return wav.array();
+    }
+
+    private static byte[] borrowBuffer() {
+        byte[] buffer = BUFFER_POOL.poll();
+        return buffer != null ? buffer : new byte[BUFFER_SIZE];
+    }
+
+    private static void readFully(InputStream in, byte[] target, int length) throws IOException {
+        int read = in.readNBytes(target, 0, length);
+        if (read < length) {
+            throw new EOFException("Unexpected end of WAV stream");
+        }
+    }
+
+    private static void skip(InputStream in, long bytes) throws IOException {
+        long remaining = bytes;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException("Unexpected end of WAV stream");
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+}
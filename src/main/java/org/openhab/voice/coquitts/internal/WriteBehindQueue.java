@@ -0,0 +1,220 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persists new cache entries in the background, after their audio has been returned to the caller.
+ * <p>
+ * Queued entries are served from memory until they are written. A second write of a queued key replaces the first
+ * one, so each entry is written once. The queue is bounded: when it is full, the entry is written by the calling
+ * thread, so memory use stays limited when the storage cannot keep up.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+class WriteBehindQueue {
+
+    static final int CAPACITY = 64;
+
+    /**
+     * Persists one entry.
+     */
+    @FunctionalInterface
+    interface Write {
+        void run() throws IOException;
+    }
+
+    private static class Pending {
+        final byte[] audio;
+        final Write write;
+
+        Pending(byte[] audio, Write write) {
+            this.audio = audio;
+            this.write = write;
+        }
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(WriteBehindQueue.class);
+
+    private final Executor executor;
+    private final int capacity;
+
+    private final Map<String, Pending> pending = new LinkedHashMap<>();
+    private final Set<String> writing = new HashSet<>();
+    private boolean draining;
+
+    /**
+     * Constructor.
+     *
+     * @param executor Executor of the background writes
+     * @param capacity Maximum number of queued entries
+     */
+    WriteBehindQueue(Executor executor, int capacity) {
+        this.executor = executor;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Queues an entry.
+     *
+     * @param key Cache key
+     * @param audio Audio of the entry, served by {@link #get(String)} until it is written
+     * @param write Persists the entry
+     */
+    void submit(String key, byte[] audio, Write write) {
+        Pending entry = new Pending(audio, write);
+        boolean queued = false;
+        boolean startDrain = false;
+        synchronized (this) {
+            if (pending.containsKey(key) || pending.size() < capacity) {
+                pending.put(key, entry);
+                queued = true;
+                startDrain = !draining;
+                draining = true;
+            }
+        }
+        if (!queued) {
+            logger.debug("Write-behind queue is full, writing {} directly", key);
+            write(key, entry);
+            return;
+        }
+        if (startDrain) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                logger.debug("Could not write cache entries in the background: {}", e.getMessage());
+                drain();
+            }
+        }
+    }
+
+    /**
+     * @param key Cache key
+     * @return Audio of a queued entry or {@code null} if the key is not queued
+     */
+    synchronized byte @Nullable [] get(String key) {
+        Pending entry = pending.get(key);
+        return entry != null ? entry.audio : null;
+    }
+
+    /**
+     * Drops a queued entry, e.g. because it has been evicted.
+     *
+     * @param key Cache key
+     */
+    synchronized void remove(String key) {
+        pending.remove(key);
+    }
+
+    /**
+     * Drops all queued entries, e.g. because the cache is purged.
+     */
+    synchronized void clear() {
+        pending.clear();
+    }
+
+    /**
+     * @return Number of queued entries
+     */
+    synchronized int size() {
+        return pending.size();
+    }
+
+    /**
+     * Writes all queued entries and waits for writes in progress.
+     */
+    void flush() {
+        drainQueued();
+        synchronized (this) {
+            while (!writing.isEmpty()) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            drainQueued();
+        } finally {
+            boolean restart;
+            synchronized (this) {
+                // entries queued after the last check need another drain
+                restart = pending.keySet().stream().anyMatch(k -> !writing.contains(k));
+                draining = restart;
+            }
+            if (restart) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    drain();
+                }
+            }
+        }
+    }
+
+    private void drainQueued() {
+        while (true) {
+            String key = null;
+            Pending entry = null;
+            synchronized (this) {
+                for (Map.Entry<String, Pending> e : pending.entrySet()) {
+                    if (!writing.contains(e.getKey())) {
+                        key = e.getKey();
+                        entry = e.getValue();
+                        writing.add(key);
+                        break;
+                    }
+                }
+            }
+            if (key == null || entry == null) {
+                return;
+            }
+            try {
+                write(key, entry);
+            } finally {
+                synchronized (this) {
+                    writing.remove(key);
+                    // a replacement queued meanwhile is written in the next round
+                    pending.remove(key, entry);
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    private void write(String key, Pending entry) {
+        try {
+            entry.write.run();
+        } catch (IOException e) {
+            logger.warn("Could not write cache entry {}: {}", key, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for {@link CacheBundle}.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+public class CacheBundleTest {
+
+    private @TempDir @NonNullByDefault({}) File folder;
+
+    @Test
+    public void exportedEntriesAreReadBack() throws IOException {
+        byte[] first = audio("voice_a", 100, (byte) 1);
+        byte[] second = audio("voice_b", 300, (byte) 2);
+        File file = new File(folder, "test.bundle");
+
+        int exported = CacheBundle.export(file, folder,
+                List.of(entry("voice_a", 100), entry("voice_b", 300), entry("voice_missing", 50)));
+
+        assertEquals(2, exported);
+        try (CacheBundle bundle = CacheBundle.open(file)) {
+            assertArrayEquals(first, bundle.read("voice_a"));
+            assertArrayEquals(second, bundle.read("voice_b"));
+            assertNull(bundle.read("voice_missing"));
+            assertTrue(bundle.contains("voice_b"));
+            assertFalse(bundle.contains("voice_missing"));
+            assertEquals(List.of("voice_a", "voice_b"),
+                    bundle.getEntries().stream().map(CacheIndex.Entry::getKey).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void truncatedBundleIsRejected() throws IOException {
+        audio("voice_a", 100, (byte) 1);
+        File file = new File(folder, "test.bundle");
+        CacheBundle.export(file, folder, List.of(entry("voice_a", 100)));
+
+        try (RandomAccessFile truncate = new RandomAccessFile(file, "rw")) {
+            truncate.setLength(file.length() - 1);
+        }
+
+        assertThrows(IOException.class, () -> CacheBundle.open(file));
+    }
+
+    @Test
+    public void bundleWithTruncatedIndexIsRejected() throws IOException {
+        File file = new File(folder, "test.bundle");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file.toPath()))) {
+            out.write("COQUITTS".getBytes(StandardCharsets.US_ASCII));
+            out.writeInt(1);
+            out.writeInt(1000);
+            out.write("[]".getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertThrows(IOException.class, () -> CacheBundle.open(file));
+    }
+
+    @Test
+    public void entryOutsideTheCacheFolderIsRejected() throws IOException {
+        File file = new File(folder, "test.bundle");
+        byte[] index = "[{\"entry\":{\"key\":\"../voice_a\",\"format\":\"wav\"},\"offset\":0,\"length\":0}]"
+                .getBytes(StandardCharsets.UTF_8);
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file.toPath()))) {
+            out.write("COQUITTS".getBytes(StandardCharsets.US_ASCII));
+            out.writeInt(1);
+            out.writeInt(index.length);
+            out.write(index);
+        }
+
+        assertThrows(IOException.class, () -> CacheBundle.open(file));
+    }
+
+    @Test
+    public void otherFileIsRejected() throws IOException {
+        File file = new File(folder, "test.bundle");
+        Files.write(file.toPath(), "RIFF....WAVE".getBytes(StandardCharsets.US_ASCII));
+
+        assertThrows(IOException.class, () -> CacheBundle.open(file));
+    }
+
+    @Test
+    public void closedBundleFailsToRead() throws IOException {
+        audio("voice_a", 100, (byte) 1);
+        File file = new File(folder, "test.bundle");
+        CacheBundle.export(file, folder, List.of(entry("voice_a", 100)));
+
+        CacheBundle bundle = CacheBundle.open(file);
+        bundle.close();
+
+        assertThrows(IOException.class, () -> bundle.read("voice_a"));
+    }
+
+    private byte[] audio(String key, int length, byte value) throws IOException {
+        byte[] audio = new byte[length];
+        Arrays.fill(audio, value);
+        Files.write(new File(folder, key + ".wav").toPath(), audio);
+        return audio;
+    }
+
+    private static CacheIndex.Entry entry(String key, long size) {
+        return new CacheIndex.Entry(key, "Text of " + key, "voice", "config", "wav", size);
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for {@link CacheIndex}.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+public class CacheIndexTest {
+
+    private @TempDir @NonNullByDefault({}) File folder;
+
+    @Test
+    public void logIsReplayedOnLoad() throws IOException {
+        CacheIndex index = open();
+        index.put(entry("voice_a", "Door open."));
+        index.put(entry("voice_b", "Door closed."));
+        index.put(entry("voice_c", "Good night."));
+        index.remove("voice_a");
+
+        CacheIndex reloaded = open();
+
+        assertEquals(List.of("voice_b", "voice_c"), keys(reloaded));
+        CacheIndex.Entry entry = reloaded.get("voice_b");
+        assertNotNull(entry);
+        assertEquals("Door closed.", entry.getText());
+        assertEquals("voice", entry.getVoice());
+        assertEquals(10, entry.getSize());
+    }
+
+    @Test
+    public void entriesWithoutAudioAreDroppedOnLoad() throws IOException {
+        CacheIndex index = open();
+        index.put(entry("voice_a", "Door open."));
+        index.put(entry("voice_b", "Door closed."));
+        Files.delete(new File(folder, "voice_a.wav").toPath());
+
+        assertEquals(List.of("voice_b"), keys(open()));
+    }
+
+    @Test
+    public void partialRecordIsSkippedOnLoad() throws IOException {
+        CacheIndex index = open();
+        index.put(entry("voice_a", "Door open."));
+        // a crash while appending leaves an incomplete line behind
+        Files.write(logFile().toPath(), "{\"key\":\"voice_b\",\"te".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        assertEquals(List.of("voice_a"), keys(open()));
+    }
+
+    @Test
+    public void logIsCompactedOnceItOutgrowsTheEntries() throws IOException {
+        CacheIndex index = open();
+        index.put(entry("voice_kept", "Good morning."));
+        for (int i = 0; i < 200; i++) {
+            index.put(entry("voice_" + i, "Text " + i));
+            index.remove("voice_" + i);
+        }
+
+        // 401 records were appended, the log holds at most the records since the last compaction
+        long lines = Files.readAllLines(logFile().toPath()).stream().filter(l -> !l.isBlank()).count();
+        assertTrue(lines <= 101, lines + " records in the log");
+        assertEquals(List.of("voice_kept"), keys(open()));
+    }
+
+    @Test
+    public void compactionPersistsPlayCounts() throws IOException {
+        CacheIndex index = open();
+        index.put(entry("voice_a", "Door open."));
+        index.touch("voice_a");
+        index.touch("voice_a");
+
+        index.compact();
+
+        CacheIndex.Entry entry = open().get("voice_a");
+        assertNotNull(entry);
+        assertEquals(3, entry.getPlays());
+        assertEquals(1, Files.readAllLines(logFile().toPath()).size());
+    }
+
+    @Test
+    public void playCountsSurviveWithoutCompaction() throws IOException {
+        CacheIndex index = open();
+        index.put(entry("voice_a", "Door open."));
+        index.put(entry("voice_b", "Door closed."));
+        index.touch("voice_a");
+        index.touch("voice_a");
+        index.touch("voice_b");
+        index.remove("voice_b");
+
+        CacheIndex reloaded = open();
+
+        CacheIndex.Entry entry = reloaded.get("voice_a");
+        assertNotNull(entry);
+        assertEquals(3, entry.getPlays());
+        assertEquals(List.of("voice_a"), keys(reloaded));
+    }
+
+    @Test
+    public void onlyCacheSidecarsAreMigratedAndDeleted() throws IOException {
+        String migrated = "voice_" + "0".repeat(32);
+        String orphan = "voice_" + "1".repeat(32);
+        Files.write(new File(folder, migrated + ".wav").toPath(), new byte[10]);
+        Files.writeString(new File(folder, migrated + ".txt").toPath(),
+                "Config: hostname=localhost,port=5002,voice=voice\nText: Door open.");
+        Files.writeString(new File(folder, orphan + ".txt").toPath(), "Text: Door closed.");
+        Files.writeString(new File(folder, "notes.txt").toPath(), "Not a cache file");
+
+        CacheIndex index = open();
+
+        CacheIndex.Entry entry = index.get(migrated);
+        assertNotNull(entry);
+        assertEquals("Door open.", entry.getText());
+        assertEquals("voice", entry.getVoice());
+        assertEquals(List.of(migrated), keys(index));
+        assertFalse(new File(folder, migrated + ".txt").exists());
+        assertFalse(new File(folder, orphan + ".txt").exists());
+        assertTrue(new File(folder, "notes.txt").exists());
+    }
+
+    private CacheIndex open() {
+        return new CacheIndex(folder, new CacheWriter(folder));
+    }
+
+    private CacheIndex.Entry entry(String key, String text) throws IOException {
+        Files.write(new File(folder, key + ".wav").toPath(), new byte[10]);
+        return new CacheIndex.Entry(key, text, "voice", "config", "wav", 10);
+    }
+
+    private File logFile() {
+        return new File(folder, CacheIndex.LOG_FILE_NAME);
+    }
+
+    private static List<String> keys(CacheIndex index) {
+        return index.list(e -> true).stream().map(CacheIndex.Entry::getKey).sorted().collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openhab.core.audio.AudioFormat;
+import org.openhab.core.audio.AudioStream;
+import org.openhab.core.voice.TTSException;
+import org.openhab.core.voice.Voice;
+import org.openhab.voice.coquitts.internal.dto.CoquiTTSVoice;
+
+/**
+ * Checks that work arriving after {@link CoquiTTSService#dispose()} ends instead of waiting for a backend that is gone,
+ * and that callers holding on to a voice are not affected by a reconfiguration.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+public class CoquiTTSServiceDisposeTest {
+
+    private @TempDir @NonNullByDefault({}) File folder;
+
+    @Test
+    public void synthesisBoundToTheDisposedClientFails() throws Exception {
+        try (CoquiTTSServiceFixture fixture = new CoquiTTSServiceFixture(new StubCoquiServer.Options(), folder)) {
+            CoquiTTSService service = fixture.start(fixture.config(false, 1));
+            CoquiAPI api = service.getApi();
+            CoquiTTSVoice voice = (CoquiTTSVoice) fixture.voice();
+            SynthesisContext context = api.newTracedContext("late announcement", Duration.ofSeconds(5));
+
+            service.dispose();
+
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> assertThrows(TTSException.class,
+                    () -> api.synthesizeSpeech("Good night", voice, AudioFormat.CODEC_PCM_SIGNED, context)));
+        }
+    }
+
+    @Test
+    public void voiceFromBeforeAReconfigurationIsStillAccepted() throws Exception {
+        try (CoquiTTSServiceFixture fixture = new CoquiTTSServiceFixture(new StubCoquiServer.Options(), folder)) {
+            CoquiTTSService service = fixture.start(fixture.config(false, 1));
+            Voice voice = fixture.voice();
+            AudioFormat format = fixture.format();
+
+            service.updateConfig(fixture.config(false, 2));
+
+            assertNotSame(voice, fixture.voice());
+            try (AudioStream audio = service.synthesize("Good morning", voice, format)) {
+                assertTrue(audio.readAllBytes().length > 0);
+            }
+        }
+    }
+
+    @Test
+    public void itemAnnouncementsStopWithTheService() throws Exception {
+        try (CoquiTTSServiceFixture fixture = new CoquiTTSServiceFixture(new StubCoquiServer.Options(), folder)) {
+            Map<String, Object> config = fixture.config(false, 1);
+            config.put("itemAnnouncements", List.of("Door=The door is " + ItemAnnouncements.STATE_PLACEHOLDER));
+            CoquiTTSService service = fixture.start(config);
+            fixture.voice();
+
+            service.dispose();
+            service.itemStateChanged("Door", "open", "closed");
+
+            Thread.sleep(500);
+            assertEquals(0, fixture.stub.getRequestCount());
+            assertTrue(service.getItemAnnouncements().getStatistics().startsWith("0 rendered"),
+                    service.getItemAnnouncements().getStatistics());
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openhab.core.audio.AudioStream;
+import org.openhab.core.voice.TTSException;
+
+/**
+ * Checks which failed synthesis requests back off their text, against a {@link StubCoquiServer} failing every
+ * request with a given status, that a slow backend does not hold up a caller beyond its deadline, and that degraded
+ * mode only answers for an unreachable backend.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+public class CoquiTTSServiceFailureTest {
+
+    private static final String TEXT = "The front door is open";
+
+    private @TempDir @NonNullByDefault({}) File folder;
+
+    @Test
+    public void rejectedTextIsBackedOff() throws Exception {
+        assertEquals(1, failTwice(false, 422));
+        assertEquals(1, failTwice(true, 422));
+    }
+
+    @Test
+    public void rateLimitedTextIsRetried() throws Exception {
+        assertEquals(2, failTwice(false, 429));
+        assertEquals(2, failTwice(true, 429));
+    }
+
+    @Test
+    public void unauthorizedTextIsRetried() throws Exception {
+        assertEquals(2, failTwice(true, 401));
+    }
+
+    @Test
+    public void callerDeadlineOverridesTheRequestTimeout() throws Exception {
+        StubCoquiServer.Options options = new StubCoquiServer.Options().latency(5000);
+        for (boolean cloud : new boolean[] { false, true }) {
+            File serviceFolder = new File(folder, cloud ? "cloud" : "self-hosted");
+            try (CoquiTTSServiceFixture fixture = new CoquiTTSServiceFixture(options, serviceFolder)) {
+                CoquiTTSService service = fixture.start(fixture.config(cloud, 1));
+                long start = System.nanoTime();
+
+                assertThrows(TTSException.class, () -> service.synthesize(TEXT, fixture.voice(), fixture.format(),
+                        Duration.ofMillis(300)));
+
+                long millis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+                assertTrue(millis < 2000, "gave up after " + millis + " ms");
+            }
+        }
+    }
+
+    @Test
+    public void unreachableBackendIsAnsweredFromTheFallbackClip() throws Exception {
+        byte[] fallback = StubCoquiServer.silentWav(300);
+        try (CoquiTTSServiceFixture fixture = new CoquiTTSServiceFixture(new StubCoquiServer.Options(), folder)) {
+            CoquiTTSService service = fixture.start(degradedConfig(fixture, fallback));
+            fixture.stub.close();
+
+            try (AudioStream stream = service.synthesize(TEXT, fixture.voice(), fixture.format())) {
+                assertArrayEquals(fallback, stream.readAllBytes());
+            }
+        }
+    }
+
+    @Test
+    public void rejectedTextIsNotAnsweredFromTheFallbackClip() throws Exception {
+        StubCoquiServer.Options options = new StubCoquiServer.Options().errorRate(1.0).errorStatus(422);
+        try (CoquiTTSServiceFixture fixture = new CoquiTTSServiceFixture(options, folder)) {
+            CoquiTTSService service = fixture.start(degradedConfig(fixture, StubCoquiServer.silentWav(300)));
+
+            // rejected, then backed off
+            for (int i = 0; i < 2; i++) {
+                assertThrows(TTSException.class, () -> service.synthesize(TEXT, fixture.voice(), fixture.format()));
+            }
+        }
+    }
+
+    private Map<String, Object> degradedConfig(CoquiTTSServiceFixture fixture, byte[] fallback) throws Exception {
+        File clip = new File(folder, "fallback.wav");
+        Files.write(clip.toPath(), fallback);
+        Map<String, Object> config = fixture.config(false, 1);
+        config.put("degradedMode", true);
+        config.put("fallbackClips", List.of(DegradedMode.ANY_VOICE + "=" + clip.getAbsolutePath()));
+        return config;
+    }
+
+    /**
+     * Synthesizes the same text twice with both attempts failing.
+     *
+     * @return Number of synthesis requests that reached the stub server
+     */
+    private long failTwice(boolean cloud, int status) throws Exception {
+        StubCoquiServer.Options options = new StubCoquiServer.Options().errorRate(1.0).errorStatus(status);
+        File serviceFolder = new File(folder, (cloud ? "cloud-" : "self-hosted-") + status);
+        try (CoquiTTSServiceFixture fixture = new CoquiTTSServiceFixture(options, serviceFolder)) {
+            CoquiTTSService service = fixture.start(fixture.config(cloud, 1));
+            for (int i = 0; i < 2; i++) {
+                assertThrows(TTSException.class, () -> service.synthesize(TEXT, fixture.voice(), fixture.format()));
+            }
+            return fixture.stub.getRequestCount();
+        }
+    }
+}
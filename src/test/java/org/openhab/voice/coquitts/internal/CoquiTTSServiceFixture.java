@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import static org.mockito.Mockito.*;
+
+import java.io.File;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.jetty.client.HttpClient;
+import org.openhab.core.audio.AudioFormat;
+import org.openhab.core.auth.client.oauth2.OAuthFactory;
+import org.openhab.core.io.net.http.HttpClientFactory;
+import org.openhab.core.io.net.http.HttpUtil;
+import org.openhab.core.voice.Voice;
+import org.osgi.service.cm.ConfigurationAdmin;
+
+/**
+ * Service instance with its own cache running against a {@link StubCoquiServer}.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+class CoquiTTSServiceFixture implements AutoCloseable {
+
+    final StubCoquiServer stub;
+    final HttpClientFactory httpClientFactory = mock(HttpClientFactory.class);
+
+    private final HttpClient httpClient = new HttpClient();
+    private final File folder;
+    private @Nullable CoquiTTSService service;
+
+    /**
+     * Starts the stub server and the HTTP client.
+     *
+     * @param options Behaviour of the stub server
+     * @param folder Folder of the cache and data of the service
+     */
+    CoquiTTSServiceFixture(StubCoquiServer.Options options, File folder) throws Exception {
+        this.stub = new StubCoquiServer(options);
+        this.folder = folder;
+        httpClient.start();
+        when(httpClientFactory.getCommonHttpClient()).thenReturn(httpClient);
+        // HttpRequestBuilder and HttpUtil send their requests with the common client
+        new HttpUtil(httpClientFactory);
+    }
+
+    /**
+     * @param cloud {@code true} to use the cloud client, {@code false} for the self-hosted client
+     * @param slots Request slot limit
+     * @return Configuration of a service using the stub server
+     */
+    Map<String, Object> config(boolean cloud, int slots) {
+        Map<String, Object> config = new HashMap<>();
+        config.put("isCloudAccount", cloud);
+        config.put("apiKey", StubCoquiServer.API_KEY);
+        config.put("cloudUrl", stub.getBaseUrl());
+        config.put("scheme", "http");
+        config.put("hostname", "127.0.0.1");
+        config.put("port", stub.getPort());
+        config.put("maxConcurrentRequests", slots);
+        config.put("interactiveConcurrency", slots);
+        config.put("requestTimeout", 30);
+        return config;
+    }
+
+    /**
+     * Creates and configures the service.
+     *
+     * @param config Configuration
+     * @return Configured service
+     */
+    CoquiTTSService start(Map<String, Object> config) {
+        CoquiTTSService started = new CoquiTTSService(mock(ConfigurationAdmin.class), mock(OAuthFactory.class),
+                httpClientFactory);
+        started.initialize(config, new File(folder, "cache"), new File(folder, "data"));
+        service = started;
+        return started;
+    }
+
+    /**
+     * @return First voice of the started service
+     */
+    Voice voice() {
+        CoquiTTSService started = service;
+        Voice voice = started == null ? null
+                : started.getAvailableVoices().stream().min(Comparator.comparing(Voice::getUID)).orElse(null);
+        if (voice == null) {
+            throw new IllegalStateException("The stub server provided no voice");
+        }
+        return voice;
+    }
+
+    /**
+     * @return Format supported by the started service
+     */
+    AudioFormat format() {
+        CoquiTTSService started = service;
+        AudioFormat format = started == null ? null : started.getSupportedFormats().stream().findFirst().orElse(null);
+        if (format == null) {
+            throw new IllegalStateException("The service supports no format");
+        }
+        return format;
+    }
+
+    @Override
+    public void close() throws Exception {
+        CoquiTTSService started = service;
+        if (started != null) {
+            started.dispose();
+        }
+        httpClient.stop();
+        stub.close();
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openhab.core.audio.AudioFormat;
+import org.openhab.core.audio.AudioStream;
+import org.openhab.core.voice.TTSException;
+import org.openhab.core.voice.Voice;
+
+/**
+ * Drives {@link CoquiTTSService#synthesize(String, Voice, AudioFormat)} at a fixed concurrency against a
+ * {@link StubCoquiServer}. Every request uses a new text, so all of them go through the backend.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+public class CoquiTTSServiceLoadTest {
+
+    private static final int CONCURRENCY = 8;
+    private static final int REQUESTS = 100;
+
+    /**
+     * Single sentence texts, so the cloud client sends them in one chunk
+     */
+    private static final String TEXT = "Load test announcement number %d";
+
+    private @TempDir @NonNullByDefault({}) File folder;
+
+    @Test
+    public void selfHostedClientServesAllRequests() throws Exception {
+        runLoad(false);
+    }
+
+    @Test
+    public void cloudClientServesAllRequests() throws Exception {
+        runLoad(true);
+    }
+
+    private void runLoad(boolean cloud) throws Exception {
+        StubCoquiServer.Options options = new StubCoquiServer.Options().latency(20).jitter(10).clip(200).tagged(true);
+        try (CoquiTTSServiceFixture fixture = new CoquiTTSServiceFixture(options, folder)) {
+            CoquiTTSService service = fixture.start(fixture.config(cloud, CONCURRENCY));
+            Voice voice = fixture.voice();
+            AudioFormat format = fixture.format();
+            TextNormalizer normalizer = service.getApi().getNormalizer();
+            Map<String, String> failures = new ConcurrentHashMap<>();
+            CountDownLatch done = new CountDownLatch(REQUESTS);
+            ExecutorService callers = Executors.newFixedThreadPool(CONCURRENCY);
+            try {
+                for (int i = 0; i < REQUESTS; i++) {
+                    String text = String.format(TEXT, i);
+                    callers.execute(() -> {
+                        try (AudioStream stream = service.synthesize(text, voice, format)) {
+                            String problem = CoquiTTSServiceStressTest.verify(stream.readAllBytes(),
+                                    normalizer.normalize(text, voice.getLocale()));
+                            if (problem != null) {
+                                failures.put(text, problem);
+                            }
+                        } catch (TTSException | IOException e) {
+                            failures.put(text, e.getClass().getSimpleName() + ": " + e.getMessage());
+                        } finally {
+                            done.countDown();
+                        }
+                    });
+                }
+                assertTrue(done.await(2, TimeUnit.MINUTES), "All requests return");
+            } finally {
+                callers.shutdownNow();
+            }
+            assertEquals(Map.of(), failures);
+            assertEquals(REQUESTS, fixture.stub.getRequestCount());
+        }
+    }
+}
@@ -0,0 +1,295 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openhab.core.audio.AudioFormat;
+import org.openhab.core.audio.AudioStream;
+import org.openhab.core.i18n.CommunicationException;
+import org.openhab.core.voice.TTSException;
+import org.openhab.core.voice.Voice;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hammers {@link CoquiTTSService#synthesize(String, Voice, AudioFormat)} with overlapping texts while the
+ * configuration is changed and the cache is purged and evicted, then with a growing number of callers.
+ * <p>
+ * The stub server tags its clips with a byte derived from the text. Every returned clip must be a complete WAV file
+ * whose samples all carry the tag of the requested text, so partial files, mixed up cache entries and truncated
+ * downloads are detected. Every call must return within the request timeout, and only a few calls may fail while the
+ * service is disrupted.
+ * <p>
+ * The throughput of every caller count is logged, more callers must not serve fewer calls per second than one.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+public class CoquiTTSServiceStressTest {
+
+    private static final int CHAOS_THREADS = 16;
+    private static final int CHAOS_INTERVAL_MILLIS = 50;
+    private static final int OPERATIONS = 300;
+    private static final int[] SCALING_THREADS = { 1, 4, 16, 64 };
+    private static final int SLOTS = 64;
+
+    /**
+     * Share of the calls that may fail during the chaos phase, e.g. while a backend client is replaced
+     */
+    private static final double MAX_CHAOS_FAILURE_RATE = 0.05;
+
+    /**
+     * Short single sentence texts, so the cloud client sends every text in one chunk with one tag
+     */
+    private static final String[] TEXTS = { "The front door is open", "The back door is open", "The garage is open",
+            "The washing machine has finished", "The dryer has finished", "The dishwasher has finished",
+            "Somebody is at the door", "The mail has arrived", "It is raining", "The window in the kitchen is open",
+            "The window in the bedroom is open", "The alarm is armed", "The alarm is disarmed", "Good morning",
+            "Good night", "The battery of the smoke detector is low", "The freezer is too warm",
+            "The heating is switched off", "The lights are still on", "The car is charged", "Dinner is ready",
+            "The bins are collected tomorrow", "The temperature outside is below zero", "The guests have arrived" };
+
+    private final Logger logger = LoggerFactory.getLogger(CoquiTTSServiceStressTest.class);
+
+    private @TempDir @NonNullByDefault({}) File folder;
+
+    @Test
+    public void selfHostedClientSurvivesChaosAndScales() throws Exception {
+        run(false);
+    }
+
+    @Test
+    public void cloudClientSurvivesChaosAndScales() throws Exception {
+        run(true);
+    }
+
+    private void run(boolean cloud) throws Exception {
+        StubCoquiServer.Options options = new StubCoquiServer.Options().latency(20).jitter(10).clip(200).tagged(true);
+        try (CoquiTTSServiceFixture fixture = new CoquiTTSServiceFixture(options, folder)) {
+            CoquiTTSService service = fixture.start(config(fixture, cloud, false, "platform", SLOTS));
+            chaos(fixture, service, cloud);
+            scaling(service, fixture.voice(), fixture.format());
+        }
+    }
+
+    private Map<String, Object> config(CoquiTTSServiceFixture fixture, boolean cloud, boolean purge,
+            String executionMode, int slots) {
+        Map<String, Object> config = fixture.config(cloud, slots);
+        config.put("executionMode", executionMode);
+        config.put("purgeCache", purge);
+        return config;
+    }
+
+    /**
+     * Synthesizes overlapping texts from several threads while another thread reconfigures the service, purges the
+     * cache and evicts all entries. Some calls may fail while the backend client is replaced, but no clip may be
+     * corrupt and no call may be lost.
+     */
+    private void chaos(CoquiTTSServiceFixture fixture, CoquiTTSService service, boolean cloud)
+            throws InterruptedException {
+        Voice voice = fixture.voice();
+        AudioFormat format = fixture.format();
+        TextNormalizer normalizer = service.getApi().getNormalizer();
+        Map<String, Integer> corrupt = new ConcurrentHashMap<>();
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger disruptions = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+
+        Thread chaos = new Thread(() -> {
+            while (running.get()) {
+                try {
+                    Thread.sleep(CHAOS_INTERVAL_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                int step = disruptions.getAndIncrement();
+                try {
+                    switch (step % 3) {
+                        case 0:
+                            service.updateConfig(config(fixture, cloud, false,
+                                    step % 2 == 0 ? "virtual" : "platform",
+                                    ThreadLocalRandom.current().nextInt(1, SLOTS + 1)));
+                            break;
+                        case 1:
+                            service.updateConfig(config(fixture, cloud, true, "platform", SLOTS));
+                            service.updateConfig(config(fixture, cloud, false, "platform", SLOTS));
+                            break;
+                        default:
+                            service.getApi().evict(e -> true);
+                            break;
+                    }
+                } catch (CommunicationException e) {
+                    // the voices may not load while the callers occupy all request slots, the old client stays
+                }
+            }
+        });
+        chaos.setDaemon(true);
+
+        CountDownLatch done = new CountDownLatch(OPERATIONS);
+        ExecutorService callers = Executors.newFixedThreadPool(CHAOS_THREADS);
+        try {
+            chaos.start();
+            for (int i = 0; i < OPERATIONS; i++) {
+                String text = TEXTS[ThreadLocalRandom.current().nextInt(TEXTS.length)];
+                callers.execute(() -> {
+                    try {
+                        String problem = verify(synthesize(service, text, voice, format),
+                                normalizer.normalize(text, voice.getLocale()));
+                        if (problem != null) {
+                            corrupt.merge(problem, 1, Integer::sum);
+                        }
+                    } catch (TTSException | IOException e) {
+                        // the backend client may be replaced while the call runs
+                        failed.incrementAndGet();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            // every call is bounded by the request timeout, allow for the calls queued behind them
+            assertTrue(done.await(2, TimeUnit.MINUTES), done.getCount() + " calls were lost");
+        } finally {
+            running.set(false);
+            chaos.interrupt();
+            chaos.join(TimeUnit.SECONDS.toMillis(30));
+            callers.shutdownNow();
+        }
+        assertEquals(Map.of(), corrupt);
+        assertTrue(disruptions.get() > 0);
+        logger.info("{} of {} calls failed during {} disruptions", failed.get(), OPERATIONS, disruptions.get());
+        assertTrue(failed.get() <= OPERATIONS * MAX_CHAOS_FAILURE_RATE,
+                failed.get() + " of " + OPERATIONS + " calls failed during " + disruptions.get() + " disruptions");
+        // restore the configuration of the scaling phase
+        service.updateConfig(config(fixture, cloud, false, "platform", SLOTS));
+    }
+
+    /**
+     * Runs the same mix of cached and new texts with a growing number of callers, none of the calls may fail. The
+     * throughput may flatten once the request slots or the cache are the bottleneck, but must not drop below the
+     * throughput of a single caller, which would point to contention.
+     */
+    private void scaling(CoquiTTSService service, Voice voice, AudioFormat format) throws Exception {
+        for (String text : TEXTS) {
+            synthesize(service, text, voice, format);
+        }
+        Map<Integer, Double> throughput = new LinkedHashMap<>();
+        double single = 0;
+        for (int threads : SCALING_THREADS) {
+            AtomicInteger failed = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(OPERATIONS);
+            ExecutorService callers = Executors.newFixedThreadPool(threads);
+            long start = System.nanoTime();
+            try {
+                for (int i = 0; i < OPERATIONS; i++) {
+                    String text = i % 10 == 0 ? "Stress test announcement " + threads + "-" + i
+                            : TEXTS[i % TEXTS.length];
+                    callers.execute(() -> {
+                        try {
+                            synthesize(service, text, voice, format);
+                        } catch (TTSException | IOException e) {
+                            failed.incrementAndGet();
+                        } finally {
+                            done.countDown();
+                        }
+                    });
+                }
+                assertTrue(done.await(2, TimeUnit.MINUTES), "All calls on " + threads + " threads return");
+            } finally {
+                callers.shutdownNow();
+            }
+            double seconds = (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+            throughput.put(threads, OPERATIONS / seconds);
+            if (threads == SCALING_THREADS[0]) {
+                single = OPERATIONS / seconds;
+            }
+            logger.info("{} threads: {} calls in {} s, {} calls/s", threads, OPERATIONS,
+                    String.format("%.2f", seconds), String.format("%.0f", OPERATIONS / seconds));
+            assertEquals(0, failed.get(), "Failed calls on " + threads + " threads");
+        }
+        for (Map.Entry<Integer, Double> entry : throughput.entrySet()) {
+            assertTrue(entry.getValue() >= single, String.format("%d threads serve %.0f calls/s, 1 thread %.0f calls/s",
+                    entry.getKey(), entry.getValue(), single));
+        }
+    }
+
+    private static byte[] synthesize(CoquiTTSService service, String text, Voice voice, AudioFormat format)
+            throws TTSException, IOException {
+        try (AudioStream stream = service.synthesize(text, voice, format)) {
+            return stream.readAllBytes();
+        }
+    }
+
+    /**
+     * Checks that a clip is a complete WAV file carrying the tag of the given text.
+     *
+     * @param audio Returned clip
+     * @param text Text as sent to the backend
+     * @return Description of the problem, or {@code null} if the clip is valid
+     */
+    static @Nullable String verify(byte[] audio, String text) {
+        if (audio.length < 12 || !"RIFF".equals(chunkId(audio, 0)) || !"WAVE".equals(chunkId(audio, 8))) {
+            return "no RIFF/WAVE header";
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(audio).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt(4) != audio.length - 8) {
+            return "RIFF size " + buffer.getInt(4) + " of a file of " + audio.length + " bytes";
+        }
+        int offset = 12;
+        while (offset + 8 <= audio.length) {
+            String id = chunkId(audio, offset);
+            long size = Integer.toUnsignedLong(buffer.getInt(offset + 4));
+            if (size > audio.length) {
+                return "chunk '" + id + "' of " + size + " bytes in a file of " + audio.length + " bytes";
+            }
+            if ("data".equals(id)) {
+                if (size != audio.length - offset - 8) {
+                    return "data size " + size + " with " + (audio.length - offset - 8) + " bytes remaining";
+                }
+                byte tag = StubCoquiServer.tag(text);
+                for (int i = offset + 8; i < audio.length; i++) {
+                    if (audio[i] != tag) {
+                        return "sample at byte " + i + " does not belong to the text";
+                    }
+                }
+                return null;
+            }
+            offset += 8 + (int) size + (int) (size & 1);
+        }
+        return "no data chunk";
+    }
+
+    private static String chunkId(byte[] audio, int offset) {
+        return new String(audio, offset, 4, StandardCharsets.US_ASCII);
+    }
+}
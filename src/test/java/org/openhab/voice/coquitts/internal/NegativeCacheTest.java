@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+import org.openhab.core.voice.TTSException;
+
+/**
+ * Tests for {@link NegativeCache}.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+public class NegativeCacheTest {
+
+    private final NegativeCache cache = new NegativeCache();
+
+    @Test
+    public void unknownTextPasses() {
+        assertDoesNotThrow(() -> cache.check("voice", "Hello."));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void failedTextIsBackedOff() {
+        cache.recordFailure("voice", "Hello.", "status 500");
+
+        TTSException e = assertThrows(TTSException.class, () -> cache.check("voice", "Hello."));
+        assertTrue(e.getMessage().contains("status 500"), e.getMessage());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void backoffOnlyAppliesToTheSameVoiceAndText() {
+        cache.recordFailure("voice", "Hello.", null);
+
+        assertDoesNotThrow(() -> cache.check("voice", "Good bye."));
+        assertDoesNotThrow(() -> cache.check("other", "Hello."));
+    }
+
+    @Test
+    public void backoffDoublesUpToTheMaximum() {
+        assertEquals(NegativeCache.INITIAL_BACKOFF, cache.recordFailure("voice", "Hello.", null));
+        assertEquals(NegativeCache.INITIAL_BACKOFF.multipliedBy(2), cache.recordFailure("voice", "Hello.", null));
+        assertEquals(NegativeCache.INITIAL_BACKOFF.multipliedBy(4), cache.recordFailure("voice", "Hello.", null));
+
+        Duration backoff = Duration.ZERO;
+        for (int i = 0; i < 30; i++) {
+            backoff = cache.recordFailure("voice", "Hello.", null);
+        }
+        assertEquals(NegativeCache.MAX_BACKOFF, backoff);
+    }
+
+    @Test
+    public void successForgetsFailures() {
+        cache.recordFailure("voice", "Hello.", null);
+        cache.recordFailure("voice", "Hello.", null);
+
+        cache.recordSuccess("voice", "Hello.");
+
+        assertDoesNotThrow(() -> cache.check("voice", "Hello."));
+        assertEquals(NegativeCache.INITIAL_BACKOFF, cache.recordFailure("voice", "Hello.", null));
+    }
+
+    @Test
+    public void clearForgetsAllFailures() {
+        cache.recordFailure("voice", "Hello.", null);
+        cache.recordFailure("voice", "Good bye.", null);
+
+        cache.clear();
+
+        assertEquals(0, cache.size());
+        assertDoesNotThrow(() -> cache.check("voice", "Hello."));
+    }
+}
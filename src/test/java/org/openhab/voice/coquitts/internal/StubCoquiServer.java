@@ -0,0 +1,373 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.common.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Minimal in-process Coqui server used to measure the add-on without a real backend.
+ * <p>
+ * Implements the endpoints of a self hosted server ({@code /details}, {@code /api/speakers}, {@code /api/languages},
+ * {@code /api/tts})
+ * and of the cloud service ({@code /api/v2/speakers}, {@code /api/v2/voices}, {@code /api/v2/samples}, including the
+ * lookup of a created sample, and the audio URLs of the created samples) on the loopback interface. Synthesis
+ * requests are answered with a silent clip after a configurable latency and jitter, or fail with status 500 at a
+ * configurable rate. Tagged clips are filled with a byte derived from the synthesized text instead of silence, so
+ * callers can tell if they received the audio of their text.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+class StubCoquiServer implements AutoCloseable {
+
+    static final int SAMPLE_RATE = 22050;
+    static final String API_KEY = "stub";
+
+    private static final String AUDIO_PATH = "/audio/";
+    private static final int HEADER_SIZE = 44;
+
+    /**
+     * Behaviour of the stub.
+     */
+    static class Options {
+        long latencyMillis = 200;
+        long jitterMillis;
+        double errorRate;
+        int errorStatus = 500;
+        int clipMillis = 1000;
+        boolean tagged;
+        boolean showDetails = true;
+
+        Options latency(long millis) {
+            this.latencyMillis = millis;
+            return this;
+        }
+
+        Options jitter(long millis) {
+            this.jitterMillis = millis;
+            return this;
+        }
+
+        Options errorRate(double rate) {
+            this.errorRate = rate;
+            return this;
+        }
+
+        Options errorStatus(int status) {
+            this.errorStatus = status;
+            return this;
+        }
+
+        Options clip(int millis) {
+            this.clipMillis = millis;
+            return this;
+        }
+
+        Options tagged(boolean tagged) {
+            this.tagged = tagged;
+            return this;
+        }
+
+        Options showDetails(boolean showDetails) {
+            this.showDetails = showDetails;
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("latency=%d ms, jitter=%d ms, error rate=%.2f (status %d), clip=%d ms%s",
+                    latencyMillis, jitterMillis, errorRate, errorStatus, clipMillis, tagged ? ", tagged" : "");
+        }
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(StubCoquiServer.class);
+    private final Gson gson = new Gson();
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Options options;
+    private final byte[] clip;
+    private final AtomicLong samples = new AtomicLong();
+    private final Map<String, String> sampleTexts = new ConcurrentHashMap<>();
+    private final AtomicLong requests = new AtomicLong();
+
+    /**
+     * Starts the server on a free port.
+     *
+     * @param latencyMillis Delay before a synthesis request is answered
+     * @param clipMillis Duration of the returned clip
+     * @throws IOException if the server could not be started
+     */
+    StubCoquiServer(long latencyMillis, int clipMillis) throws IOException {
+        this(new Options().latency(latencyMillis).clip(clipMillis));
+    }
+
+    /**
+     * Starts the server on a free port.
+     *
+     * @param options Behaviour of the stub
+     * @throws IOException if the server could not be started
+     */
+    StubCoquiServer(Options options) throws IOException {
+        this.options = options;
+        this.clip = silentWav(options.clipMillis);
+        this.executor = Executors
+                .newCachedThreadPool(new NamedThreadFactory(CoquiTTSService.SERVICE_ID + "-stub", true));
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/details", e -> respond(e, "text/html", details()));
+        server.createContext("/api/speakers", e -> respond(e, "application/json", "[\"stub\"]"));
+        server.createContext("/api/languages", e -> respond(e, "application/json", "[\"en\"]"));
+        server.createContext("/api/tts", this::synthesize);
+        server.createContext("/api/v2/speakers", e -> respond(e, "application/json", listResponse("stub", "Stub")));
+        server.createContext("/api/v2/voices", e -> respond(e, "application/json", listResponse(null, null)));
+        server.createContext("/api/v2/samples", this::createSample);
+        server.createContext(AUDIO_PATH, this::downloadSample);
+        server.start();
+        logger.debug("Stub Coqui server listening on port {}", getPort());
+    }
+
+    /**
+     * @return Port the server is listening on
+     */
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return Base URL to use instead of the cloud service
+     */
+    String getBaseUrl() {
+        return "http://" + server.getAddress().getAddress().getHostAddress() + ":" + getPort();
+    }
+
+    /**
+     * @return Number of synthesis requests received, including failed ones
+     */
+    long getRequestCount() {
+        return requests.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void synthesize(HttpExchange exchange) throws IOException {
+        if (simulateBackend(exchange)) {
+            respond(exchange, "audio/wav", clipFor(queryParameter(exchange, "text")));
+        }
+    }
+
+    private void downloadSample(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String id = path.substring(AUDIO_PATH.length()).replace(".wav", "");
+        respond(exchange, "audio/wav", clipFor(sampleTexts.get(id)));
+    }
+
+    private byte[] clipFor(@Nullable String text) {
+        if (!options.tagged || text == null) {
+            return clip;
+        }
+        byte[] tagged = clip.clone();
+        Arrays.fill(tagged, HEADER_SIZE, tagged.length, tag(text));
+        return tagged;
+    }
+
+    private static @Nullable String queryParameter(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String parameter : query.split("&")) {
+            int separator = parameter.indexOf('=');
+            if (separator > 0 && name.equals(parameter.substring(0, separator))) {
+                return URLDecoder.decode(parameter.substring(separator + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param text Synthesized text
+     * @return Byte tagged clips of the text are filled with, never 0
+     */
+    static byte tag(String text) {
+        return (byte) (1 + Math.floorMod(text.hashCode(), 255));
+    }
+
+    private void createSample(HttpExchange exchange) throws IOException {
+        if ("GET".equals(exchange.getRequestMethod())) {
+            getSample(exchange);
+            return;
+        }
+        String text = "";
+        try (InputStream in = exchange.getRequestBody()) {
+            JsonObject request = gson.fromJson(new String(in.readAllBytes(), StandardCharsets.UTF_8),
+                    JsonObject.class);
+            if (request != null && request.has("text")) {
+                text = request.get("text").getAsString();
+            }
+        } catch (JsonParseException e) {
+            respond(exchange, 400, "application/json", "{\"error\":\"invalid request\"}");
+            return;
+        }
+        if (simulateBackend(exchange)) {
+            String id = Long.toString(samples.incrementAndGet());
+            sampleTexts.put(id, text);
+            respond(exchange, "application/json", sampleResponse(id, text));
+        }
+    }
+
+    /**
+     * Answers {@code GET /api/v2/samples/<id>} with a sample created earlier.
+     */
+    private void getSample(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String id = path.substring(path.lastIndexOf('/') + 1);
+        String text = sampleTexts.get(id);
+        if (text == null) {
+            respond(exchange, 404, "application/json", "{\"detail\":\"Not found.\"}");
+        } else {
+            respond(exchange, "application/json", sampleResponse(id, text));
+        }
+    }
+
+    private String sampleResponse(String id, String text) {
+        JsonObject response = new JsonObject();
+        response.addProperty("id", id);
+        response.addProperty("emotion", "Neutral");
+        response.addProperty("name", "Created by stub");
+        response.addProperty("text", text);
+        response.addProperty("audio_url", getBaseUrl() + AUDIO_PATH + id + ".wav");
+        return gson.toJson(response);
+    }
+
+    /**
+     * Waits for the configured latency and fails the request at the configured rate.
+     *
+     * @return {@code true} if the request should be answered successfully
+     */
+    private boolean simulateBackend(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long delay = options.latencyMillis
+                + (options.jitterMillis > 0 ? random.nextLong(-options.jitterMillis, options.jitterMillis + 1) : 0);
+        try {
+            Thread.sleep(Math.max(0, delay));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (options.errorRate > 0 && random.nextDouble() < options.errorRate) {
+            respond(exchange, options.errorStatus, "application/json", "{\"error\":\"simulated failure\"}");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return Details page like rendered by a server started with or without {@code --show_details true}
+     */
+    private String details() {
+        if (!options.showDetails) {
+            return "<html><body></body></html>";
+        }
+        return "<html><body><table>\n<tr><td>model_name</td><td>tts_models/en/stub/vits</td></tr>\n"
+                + "<tr><td>port</td><td>" + getPort() + "</td></tr>\n<tr><td>vocoder_name</td><td>None</td></tr>\n"
+                + "</table><table>\n<tr><td>model</td><td>vits</td></tr>\n</table></body></html>";
+    }
+
+    private String listResponse(@Nullable String id, @Nullable String name) {
+        JsonObject response = new JsonObject();
+        JsonArray result = new JsonArray();
+        if (id != null) {
+            JsonObject person = new JsonObject();
+            person.addProperty("id", id);
+            person.addProperty("name", name);
+            result.add(person);
+        }
+        response.addProperty("count", result.size());
+        response.addProperty("has_prev", false);
+        response.addProperty("has_next", false);
+        response.add("result", result);
+        return gson.toJson(response);
+    }
+
+    private void respond(HttpExchange exchange, String contentType, String body) throws IOException {
+        respond(exchange, 200, contentType, body);
+    }
+
+    private void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        respond(exchange, status, contentType, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void respond(HttpExchange exchange, String contentType, byte[] body) throws IOException {
+        respond(exchange, 200, contentType, body);
+    }
+
+    private void respond(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        // the server may close idle connections while the client reuses them
+        exchange.getResponseHeaders().add("Connection", "close");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Creates a 16 bit mono WAV file of silence.
+     *
+     * @param millis Duration of the clip
+     * @return WAV file content
+     */
+    static byte[] silentWav(int millis) {
+        int dataLength = SAMPLE_RATE * millis / 1000 * 2;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + dataLength).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put("RIFF".getBytes(StandardCharsets.US_ASCII)).putInt(36 + dataLength)
+                .put("WAVE".getBytes(StandardCharsets.US_ASCII));
+        buffer.put("fmt ".getBytes(StandardCharsets.US_ASCII)).putInt(16).putShort((short) 1).putShort((short) 1)
+                .putInt(SAMPLE_RATE).putInt(SAMPLE_RATE * 2).putShort((short) 2).putShort((short) 16);
+        buffer.put("data".getBytes(StandardCharsets.US_ASCII)).putInt(dataLength);
+        return buffer.array();
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openhab.voice.coquitts.internal.SynthesisScheduler.ExecutionMode;
+import org.openhab.voice.coquitts.internal.SynthesisScheduler.Lane;
+import org.openhab.voice.coquitts.internal.dto.CoquiTTSVoice;
+
+/**
+ * Runs concurrent requests of the self-hosted client against a {@link StubCoquiServer} in every execution mode the
+ * JVM supports. The limits of the scheduler allow all requests to run at once, so in both modes they must overlap
+ * instead of being served one after another.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+public class SynthesisSchedulerExecutionModeTest {
+
+    private static final long STUB_LATENCY_MILLIS = 200;
+    private static final int REQUESTS = 20;
+
+    private @TempDir @NonNullByDefault({}) File folder;
+
+    @Test
+    public void platformThreadsRunRequestsConcurrently() throws Exception {
+        runMode(ExecutionMode.PLATFORM);
+    }
+
+    @Test
+    public void virtualThreadsRunRequestsConcurrently() throws Exception {
+        if (SynthesisScheduler.isVirtualThreadSupported()) {
+            runMode(ExecutionMode.VIRTUAL);
+        }
+    }
+
+    private void runMode(ExecutionMode mode) throws Exception {
+        StubCoquiServer.Options options = new StubCoquiServer.Options().latency(STUB_LATENCY_MILLIS).clip(100);
+        try (CoquiTTSServiceFixture fixture = new CoquiTTSServiceFixture(options, folder)) {
+            SynthesisScheduler scheduler = new SynthesisScheduler(mode, REQUESTS, REQUESTS, 1);
+            ExecutorService callers = Executors.newFixedThreadPool(REQUESTS);
+            try {
+                assertEquals(mode, scheduler.getExecutionMode());
+                TTSClient client = new TTSClient("127.0.0.1", fixture.stub.getPort(), fixture.httpClientFactory,
+                        scheduler);
+                CoquiTTSVoice voice = new CoquiTTSVoice(Locale.ENGLISH, "stub", "en", "stub");
+                List<Callable<byte[]>> requests = new ArrayList<>();
+                for (int i = 0; i < REQUESTS; i++) {
+                    String text = "benchmark " + i;
+                    requests.add(() -> client.synthesize(text, voice,
+                            new SynthesisContext(Lane.INTERACTIVE, Duration.ofMinutes(1))));
+                }
+
+                long start = System.nanoTime();
+                for (Future<byte[]> result : callers.invokeAll(requests, 1, TimeUnit.MINUTES)) {
+                    assertTrue(result.get().length > 0);
+                }
+                long wallMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                assertTrue(wallMillis < STUB_LATENCY_MILLIS * REQUESTS / 2,
+                        mode + " ran " + REQUESTS + " requests in " + wallMillis + " ms");
+            } finally {
+                callers.shutdownNow();
+                scheduler.shutdown();
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.openhab.voice.coquitts.internal.SynthesisScheduler.Lane;
+
+/**
+ * Tests for the lane limits and priorities of {@link SynthesisScheduler}.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+public class SynthesisSchedulerTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<SynthesisScheduler> schedulers = new ArrayList<>();
+
+    @AfterEach
+    public void tearDown() {
+        release.countDown();
+        schedulers.forEach(SynthesisScheduler::shutdown);
+    }
+
+    @Test
+    public void lanesStayWithinTheirLimits() throws Exception {
+        SynthesisScheduler scheduler = scheduler(3, 2, 1);
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(scheduler.submit(Lane.BACKGROUND, this::block));
+            futures.add(scheduler.submit(Lane.INTERACTIVE, this::block));
+        }
+
+        assertEquals(2, scheduler.getActiveCount(Lane.INTERACTIVE));
+        assertEquals(1, scheduler.getActiveCount(Lane.BACKGROUND));
+        assertEquals(1, scheduler.getQueueDepth(Lane.INTERACTIVE));
+        assertEquals(2, scheduler.getQueueDepth(Lane.BACKGROUND));
+
+        release.countDown();
+        for (Future<String> future : futures) {
+            assertEquals("done", future.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(0, scheduler.getActiveCount(Lane.INTERACTIVE));
+        assertEquals(0, scheduler.getActiveCount(Lane.BACKGROUND));
+    }
+
+    @Test
+    public void backgroundWorkCannotOccupyAllSlots() {
+        SynthesisScheduler scheduler = scheduler(2, 2, 1);
+        for (int i = 0; i < 5; i++) {
+            scheduler.submit(Lane.BACKGROUND, this::block);
+        }
+
+        scheduler.submit(Lane.INTERACTIVE, this::block);
+
+        assertEquals(1, scheduler.getActiveCount(Lane.BACKGROUND));
+        assertEquals(1, scheduler.getActiveCount(Lane.INTERACTIVE));
+        assertEquals(0, scheduler.getQueueDepth(Lane.INTERACTIVE));
+    }
+
+    @Test
+    public void queuedInteractiveWorkStartsFirst() throws Exception {
+        SynthesisScheduler scheduler = scheduler(1, 1, 1);
+        List<Lane> order = new ArrayList<>();
+        Future<String> blocker = scheduler.submit(Lane.BACKGROUND, this::block);
+        Future<Lane> background = scheduler.submit(Lane.BACKGROUND, () -> record(order, Lane.BACKGROUND));
+        Future<Lane> interactive = scheduler.submit(Lane.INTERACTIVE, () -> record(order, Lane.INTERACTIVE));
+
+        release.countDown();
+        blocker.get(10, TimeUnit.SECONDS);
+        background.get(10, TimeUnit.SECONDS);
+        interactive.get(10, TimeUnit.SECONDS);
+
+        assertEquals(List.of(Lane.INTERACTIVE, Lane.BACKGROUND), order);
+    }
+
+    @Test
+    public void raisedLimitsStartQueuedWork() {
+        SynthesisScheduler scheduler = scheduler(1, 1, 1);
+        scheduler.submit(Lane.INTERACTIVE, this::block);
+        scheduler.submit(Lane.INTERACTIVE, this::block);
+        assertEquals(1, scheduler.getQueueDepth(Lane.INTERACTIVE));
+
+        scheduler.setLimits(2, 2, 1);
+
+        assertEquals(2, scheduler.getActiveCount(Lane.INTERACTIVE));
+        assertEquals(0, scheduler.getQueueDepth(Lane.INTERACTIVE));
+    }
+
+    @Test
+    public void shutdownCancelsQueuedAndRejectsNewWork() {
+        SynthesisScheduler scheduler = scheduler(1, 1, 1);
+        Future<String> running = scheduler.submit(Lane.INTERACTIVE, this::block);
+        Future<String> queued = scheduler.submit(Lane.INTERACTIVE, this::block);
+
+        scheduler.shutdown();
+
+        assertTrue(queued.isCancelled());
+        assertTrue(running.isCancelled());
+        assertThrows(RejectedExecutionException.class, () -> scheduler.submit(Lane.INTERACTIVE, this::block));
+    }
+
+    private SynthesisScheduler scheduler(int maxConcurrent, int interactiveLimit, int backgroundLimit) {
+        SynthesisScheduler scheduler = new SynthesisScheduler(maxConcurrent, interactiveLimit, backgroundLimit);
+        schedulers.add(scheduler);
+        return scheduler;
+    }
+
+    private String block() throws InterruptedException {
+        release.await();
+        return "done";
+    }
+
+    private static Lane record(List<Lane> order, Lane lane) {
+        synchronized (order) {
+            order.add(lane);
+        }
+        return lane;
+    }
+}
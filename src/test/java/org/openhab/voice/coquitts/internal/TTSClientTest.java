@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for the backend identity of {@link TTSClient}.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+public class TTSClientTest {
+
+    private final SynthesisScheduler scheduler = new SynthesisScheduler(1, 1, 1);
+
+    private @TempDir @NonNullByDefault({}) File folder;
+
+    @AfterEach
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void identitySurvivesPortChanges() throws Exception {
+        StubCoquiServer.Options options = new StubCoquiServer.Options();
+        try (CoquiTTSServiceFixture first = new CoquiTTSServiceFixture(options, folder);
+                CoquiTTSServiceFixture second = new CoquiTTSServiceFixture(options, folder)) {
+            assertNotEquals(first.stub.getPort(), second.stub.getPort());
+
+            String identity = client(first).getBackendIdentity();
+
+            assertTrue(identity.startsWith("coqui-server-"), identity);
+            assertEquals(identity, client(second).getBackendIdentity());
+        }
+    }
+
+    @Test
+    public void missingDetailsAreReported() throws Exception {
+        StubCoquiServer.Options options = new StubCoquiServer.Options().showDetails(false);
+        try (CoquiTTSServiceFixture fixture = new CoquiTTSServiceFixture(options, folder)) {
+            IOException e = assertThrows(IOException.class, () -> client(fixture).getBackendIdentity());
+            assertTrue(e.getMessage().contains("cache namespace"), e.getMessage());
+        }
+    }
+
+    private TTSClient client(CoquiTTSServiceFixture fixture) {
+        return new TTSClient("127.0.0.1", fixture.stub.getPort(), fixture.httpClientFactory, scheduler);
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Locale;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link TextNormalizer}.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+public class TextNormalizerTest {
+
+    private final TextNormalizer normalizer = new TextNormalizer(true, false);
+    private final TextNormalizer spellingNormalizer = new TextNormalizer(true, true);
+
+    @Test
+    public void disabledNormalizationOnlyTrims() {
+        TextNormalizer disabled = new TextNormalizer(false, true);
+
+        assertEquals("door  open ,", disabled.normalize("  door  open , ", Locale.ENGLISH));
+        assertEquals("It is 21\u00b0C", disabled.normalizeFragment("It is 21\u00b0C ", Locale.ENGLISH));
+    }
+
+    @Test
+    public void equivalentTextsShareOneForm() {
+        assertEquals("Door open.", normalizer.normalize("Door open", Locale.ENGLISH));
+        assertEquals("Door open.", normalizer.normalize("door open.", Locale.ENGLISH));
+        assertEquals("Door open.", normalizer.normalize(" Door \t open ,", Locale.ENGLISH));
+    }
+
+    @Test
+    public void finalPunctuationIsKept() {
+        assertEquals("Alarm!", normalizer.normalize("alarm!!!", Locale.ENGLISH));
+        assertEquals("Is the door open?", normalizer.normalize("is the door open ?", Locale.ENGLISH));
+    }
+
+    @Test
+    public void quotesAndDashesAreUnified() {
+        assertEquals("\"Kitchen\" - it's open.",
+                normalizer.normalize("\u201cKitchen\u201d \u2013 it\u2019s open", Locale.ENGLISH));
+    }
+
+    @Test
+    public void fragmentIsNeitherCapitalizedNorTerminated() {
+        assertEquals("the kitchen window", normalizer.normalizeFragment(" the  kitchen window ", Locale.ENGLISH));
+    }
+
+    @Test
+    public void numbersAndUnitsAreSpelledOutForEnglish() {
+        String expected = "It is twenty-one point five degrees Celsius.";
+
+        assertEquals(expected, spellingNormalizer.normalize("It is 21.5\u00b0C", Locale.ENGLISH));
+        assertEquals(expected, spellingNormalizer.normalize("It is 21.5 \u00b0C", Locale.US));
+        assertEquals("one thousand two hundred and fifty watts",
+                spellingNormalizer.normalizeFragment("1,250 W", Locale.ENGLISH));
+    }
+
+    @Test
+    public void numbersAreKeptForOtherLanguages() {
+        assertEquals("Es sind 21.5\u00b0C.", spellingNormalizer.normalize("es sind 21.5\u00b0C", Locale.GERMAN));
+    }
+
+    @Test
+    public void numbersAreKeptUnlessSpellingOutIsEnabled() {
+        assertEquals("It is 21.5\u00b0C.", normalizer.normalize("It is 21.5\u00b0C", Locale.ENGLISH));
+    }
+
+    @Test
+    public void numberToWords() {
+        assertEquals("zero", TextNormalizer.numberToWords("0"));
+        assertEquals("minus one hundred and twenty", TextNormalizer.numberToWords("-120"));
+        assertEquals("one thousand five", TextNormalizer.numberToWords("1005"));
+        assertEquals("two million three", TextNormalizer.numberToWords("2000003"));
+        assertEquals("three point one four", TextNormalizer.numberToWords("3.14"));
+    }
+}
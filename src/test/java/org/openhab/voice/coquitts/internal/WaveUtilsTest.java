@@ -0,0 +1,161 @@
+/**
+ * Copyright (c) 2010-2023 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.voice.coquitts.internal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link WaveUtils}.
+ *
+ * @author wonkothesanest - Initial contribution
+ */
+@NonNullByDefault
+public class WaveUtilsTest {
+
+    private static final long STREAMED_SIZE = 0xFFFFFFFFL;
+
+    @Test
+    public void pcmIsReadAndOtherChunksAreSkipped() throws IOException {
+        byte[] data = samples(1001, (byte) 7);
+        byte[] wav = wav(format(22050), data, data.length, true);
+
+        WaveUtils.Pcm pcm = WaveUtils.readPcm(new ByteArrayInputStream(wav), wav.length);
+
+        assertArrayEquals(format(22050), pcm.format);
+        assertArrayEquals(data, Arrays.copyOf(pcm.data, pcm.length));
+    }
+
+    @Test
+    public void streamedDataIsReadUntilTheEnd() throws IOException {
+        byte[] data = samples(200 * 1024, (byte) 3);
+        byte[] wav = wav(format(22050), data, STREAMED_SIZE, false);
+
+        // no content length either, the data grows from the initial buffer
+        WaveUtils.Pcm pcm = WaveUtils.readPcm(new ByteArrayInputStream(wav), -1);
+
+        assertEquals(data.length, pcm.length);
+        assertArrayEquals(data, Arrays.copyOf(pcm.data, pcm.length));
+    }
+
+    @Test
+    public void truncatedDataIsRejected() {
+        byte[] data = samples(1000, (byte) 1);
+        byte[] wav = wav(format(22050), data, data.length + 10, false);
+
+        assertThrows(IOException.class, () -> WaveUtils.readPcm(new ByteArrayInputStream(wav), -1));
+    }
+
+    @Test
+    public void otherStreamIsRejected() {
+        byte[] mp3 = "ID3\u0004\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000".getBytes(StandardCharsets.US_ASCII);
+
+        assertThrows(IOException.class, () -> WaveUtils.readPcm(new ByteArrayInputStream(mp3), mp3.length));
+    }
+
+    @Test
+    public void declaredDataAboveTheMaximumIsRejectedBeforeReading() {
+        byte[] wav = wav(format(22050), new byte[0], WaveUtils.MAX_PCM_SIZE + 1L, false);
+
+        assertThrows(IOException.class, () -> WaveUtils.readPcm(new ByteArrayInputStream(wav), -1));
+    }
+
+    @Test
+    public void streamedDataAboveTheMaximumIsRejected() {
+        byte[] header = wav(format(22050), new byte[0], STREAMED_SIZE, false);
+        InputStream endless = new InputStream() {
+            @Override
+            public int read() {
+                return 0;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                Arrays.fill(b, off, off + len, (byte) 0);
+                return len;
+            }
+        };
+
+        assertThrows(IOException.class,
+                () -> WaveUtils.readPcm(new SequenceInputStream(new ByteArrayInputStream(header), endless), -1));
+    }
+
+    @Test
+    public void clipsAreConcatenated() throws IOException {
+        byte[] first = samples(100, (byte) 1);
+        byte[] second = samples(51, (byte) 2);
+
+        byte[] wav = WaveUtils.concatenate(List.of(wav(format(22050), first, first.length, true),
+                wav(format(22050), second, second.length, false)));
+
+        WaveUtils.Pcm pcm = WaveUtils.readPcm(new ByteArrayInputStream(wav), wav.length);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(first);
+        expected.write(second);
+        assertArrayEquals(expected.toByteArray(), Arrays.copyOf(pcm.data, pcm.length));
+        assertEquals(wav.length - 8, ByteBuffer.wrap(wav).order(ByteOrder.LITTLE_ENDIAN).getInt(4));
+    }
+
+    @Test
+    public void clipsOfDifferentFormatsAreRejected() {
+        byte[] first = wav(format(22050), samples(100, (byte) 1), 100, false);
+        byte[] second = wav(format(16000), samples(100, (byte) 1), 100, false);
+
+        assertThrows(IOException.class, () -> WaveUtils.concatenate(List.of(first, second)));
+    }
+
+    private static byte[] samples(int length, byte value) {
+        byte[] samples = new byte[length];
+        Arrays.fill(samples, value);
+        return samples;
+    }
+
+    /**
+     * @return "fmt " chunk content of 16 bit mono PCM
+     */
+    private static byte[] format(int sampleRate) {
+        return ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN).putShort((short) 1).putShort((short) 1)
+                .putInt(sampleRate).putInt(sampleRate * 2).putShort((short) 2).putShort((short) 16).array();
+    }
+
+    /**
+     * Writes a WAV file, optionally with a "LIST" chunk of odd size between format and data.
+     */
+    private static byte[] wav(byte[] format, byte[] data, long dataSize, boolean list) {
+        byte[] info = "INFOISFT\u0003\u0000\u0000\u0000ab\u0000".getBytes(StandardCharsets.US_ASCII);
+        int listSize = list ? 8 + info.length + 1 : 0;
+        ByteBuffer wav = ByteBuffer.allocate(12 + 8 + format.length + listSize + 8 + data.length)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        wav.put("RIFF".getBytes(StandardCharsets.US_ASCII)).putInt(wav.capacity() - 8)
+                .put("WAVE".getBytes(StandardCharsets.US_ASCII));
+        wav.put("fmt ".getBytes(StandardCharsets.US_ASCII)).putInt(format.length).put(format);
+        if (list) {
+            wav.put("LIST".getBytes(StandardCharsets.US_ASCII)).putInt(info.length).put(info).put((byte) 0);
+        }
+        wav.put("data".getBytes(StandardCharsets.US_ASCII)).putInt((int) dataSize).put(data);
+        return wav.array();
+    }
+}